@@ -1,21 +1,26 @@
 package com.fenix.DTBot;
 
 import javafx.concurrent.Task;
-import org.apache.commons.io.FileUtils;
 import org.openqa.selenium.*;
-import org.openqa.selenium.firefox.FirefoxDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
 
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -27,19 +32,75 @@ import java.util.logging.Logger;
  */
 public class Bot extends Task {
 
+    private static final String HOME_URL = "https://www.digitaltutors.com";
+    private static final By LESSON_DIVS =
+            By.xpath("//div[@class='scrollable_container']/div[contains(@id, 'divLesson')]");
+    // collects the attributes read by getLessons() for all lesson divs at once
+    private static final String EXTRACT_LESSONS_SCRIPT = ""
+            + "var divs = document.evaluate(\"//div[@class='scrollable_container']/div[contains(@id, 'divLesson')]\","
+            + "    document, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);"
+            + "var media = /\\.(mp4|m4v|m3u8|mpd)(\\?|$)/i;"
+            + "var lessons = [];"
+            + "for (var i = 0; i < divs.snapshotLength; i++) {"
+            + "    var div = divs.snapshotItem(i), src = null;"
+            + "    for (var j = 0; j < div.attributes.length; j++) {"
+            + "        if (media.test(div.attributes[j].value)) { src = div.attributes[j].value; break; }"
+            + "    }"
+            + "    lessons.push({title: div.getAttribute('data-title'), position: div.getAttribute('data-position'),"
+            + "        id: div.getAttribute('data-lesson_id'), src: src});"
+            + "}"
+            + "return lessons;";
+    // src and type of every source element of the page. the src property is resolved the way WebDriver resolves it
+    private static final String SOURCES_SCRIPT = ""
+            + "var sources = document.getElementsByTagName('source'), result = [];"
+            + "for (var i = 0; i < sources.length; i++) {"
+            + "    result.push([sources[i].src, sources[i].getAttribute('type')]);"
+            + "}"
+            + "return result;";
+    private static final long TAB_TIMEOUT = 25000; // milliseconds a tab may take to show its player
+    private static final long TAB_POLL_INTERVAL = 200; // milliseconds to wait when no tab is ready
+    private static final By SIGN_IN_LINK = By.xpath("//*[@id='ulLoggedInStatus']/li[3]/div/a");
+    private static final By PLAYER_LINK = By.xpath("//a[contains(@href, 'play-')]"); // on the tutorial page
+
     private Logger log; // logger to output status of this bot
 
     private String user, pass; // login information
+    private SessionStore sessionStore; // cookies of the last successful login
     private File tutDir, tutReferenceDir; // directories for each tutorial
+    private File tutRoot; // output root the current tutorial is placed on
     private File queue, outputDir; // critical information for the operation of this bot
+    private OutputRoots outputRoots; // outputDir and any additional roots tutorials can be placed on
     private int maxProgress; // when bot reaches this progress, it completed it's task
     private int baseProgress, tutProgress;
 
     private URL tutURL; // URL of the tutorial
     private boolean dtCloudPlayerEnabled; // tracks what player is used on DT
 
-    private List<String> tutList; // list of all tutorial URLs to traverse
-    private Iterator<String> tutIterator; // iterator for tutList
+    private List<QueueEntry> tutList; // list of all tutorials to traverse
+    private TutorialSource source; // hands out tutorials, a scheduler over tutList unless shared with other bots
+    private boolean shortestJobFirst; // whether to probe tutorials and download small ones first
+    private boolean preflight; // whether to measure every video of the queue before downloading
+    private boolean streamQueue; // whether to read the queue file while working through it instead of up front
+    private SizeManifest manifest; // sizes measured by the pre-flight, null without one
+    private boolean bulkExtraction = true; // whether to read lesson metadata with a single script
+    private int tabCount; // tabs used to resolve video links in parallel, 1 or less to resolve them one by one
+    private int lookaheadDepth; // tutorials read ahead by a second browser, 0 to read every tutorial when it is due
+    private boolean prefetchLinks; // whether the second browser also resolves the video links of those tutorials
+    private Lookahead lookahead; // null without a second browser
+    private WebDriver lookaheadDriver; // second browser, only used on the thread of the lookahead
+
+    private QueueEntry tutEntry; // queue entry of the current tutorial
+    private volatile DownloadEngine downloads; // shared by all tutorials so downloads overlap with scraping
+    private volatile long scrapeSince; // when the browser started working through the queue, 0 if it is not
+    private volatile long scrapeMillis; // time the browser spent on the queue, up to scrapeSince
+    private DriverPool driverPool; // browsers that outlive this bot, null to launch a private one
+    private BrowserProfile browserProfile; // how private browsers are launched
+    private NavigationTimer navigationTimer; // times lesson navigation for the profile report
+    private EventLog events; // machine readable record of the run
+    private PageArchive archive; // records scraped pages for replay, null if not recording
+    private String homeURL = HOME_URL; // site the bot works on, a local replay server when replaying
+    private String replayHost; // host of the replay server, null when working on the real site
+    private String ffmpeg; // remuxes streamed videos into MP4, null to keep them as they are
 
 
     /**
@@ -58,10 +119,25 @@ public class Bot extends Task {
         this.outputDir = outputDir;
         this.queue = queue;
 
+        outputRoots = new OutputRoots();
+        if (outputDir != null) {
+            outputRoots.add(outputDir);
+        }
+
+        if (user != null && pass != null) {
+            File sessionFile = new File(System.getProperty("user.home"), ".dtbot" + File.separator + "session");
+            sessionStore = new SessionStore(sessionFile, user, pass);
+        }
+
+        browserProfile = new BrowserProfile(false, BrowserProfile.DEFAULT_BLOCKED_HOSTS);
+        navigationTimer = new NavigationTimer(browserProfile.getName());
+
         tutList = new ArrayList<>();
         log = Logger.getLogger(Bot.class.getName()); // name logger the same as class name
-        log.addHandler(handler);
-        log.setLevel(Level.FINEST); // the lowest log level is FINEST
+        // the logger is shared by all bots, so a restarted bot must not register the handler twice
+        if (handler != null && !Arrays.asList(log.getHandlers()).contains(handler)) {
+            log.addHandler(handler);
+        }
 
         // initialize progress fields
         maxProgress = 0;
@@ -83,7 +159,7 @@ public class Bot extends Task {
         }
         tutProgress = baseProgress; // reset task progress
         // set the new progress string
-        updateTitle(Integer.toString(baseProgress / 100) + "/" + Integer.toString(tutList.size()));
+        updateTitle(Integer.toString(baseProgress / 100) + "/" + Integer.toString(maxProgress / 100) + describeETA());
         // using baseProgress ensures that the progress bar remains consistent regardless of tut progress
         updateProgress(baseProgress, maxProgress);
     }
@@ -99,32 +175,233 @@ public class Bot extends Task {
         updateProgress(tutProgress, maxProgress);
     }
 
+    /**
+     * Makes this bot borrow its browser from a pool that outlives it instead of launching a private one.
+     *
+     * @param driverPool pool to borrow from
+     */
+    public void setDriverPool(DriverPool driverPool) {
+        this.driverPool = driverPool;
+    }
+
+    /**
+     * Sets the profile browsers are launched with. If a {@link DriverPool} is used, it should launch browsers with the
+     * same profile so that the navigation timing report is attributed correctly.
+     *
+     * @param browserProfile profile to launch browsers with
+     */
+    public void setBrowserProfile(BrowserProfile browserProfile) {
+        this.browserProfile = browserProfile;
+        navigationTimer = new NavigationTimer(browserProfile.getName());
+    }
+
+    /**
+     * Logs a browser in with the credentials of this bot so that it can be handed to a later bot already logged in.
+     *
+     * @param driver browser to log in
+     */
+    void prepareDriver(WebDriver driver) {
+        login(driver, true);
+    }
+
+    /**
+     * Chooses how lesson metadata is read from the video player. Bulk extraction reads all lessons with a single
+     * script instead of three round trips to the browser per lesson.
+     *
+     * @param bulkExtraction whether to read all lessons with a single script
+     */
+    public void setBulkExtraction(boolean bulkExtraction) {
+        this.bulkExtraction = bulkExtraction;
+    }
+
+    /**
+     * Sets the level of the log shared by all bots. Messages below it are not built at all, which saves the per-lesson
+     * messages of large tutorials. Bots leave the level alone, so it holds for every bot created afterwards.
+     *
+     * @param level lowest level to log, {@link Level#FINEST} to show everything
+     */
+    public static void setLogLevel(Level level) {
+        Logger.getLogger(Bot.class.getName()).setLevel(level);
+    }
+
+    /**
+     * Resolves video links in several tabs of the same browser at once. This overlaps the waits for the player
+     * without the memory cost of launching more browsers.
+     *
+     * @param tabCount number of tabs, 1 or less to resolve links one by one
+     */
+    public void setTabCount(int tabCount) {
+        this.tabCount = tabCount;
+    }
+
+    /**
+     * Makes a second browser read the next tutorials while the videos of the current one are resolved, so that the
+     * bot can go on with them without waiting for the tutorial page and the lesson list. The second browser can also
+     * resolve their video links in tabs. Tutorials are taken from the queue as they are read ahead, so with a
+     * coordinator they are leased early.
+     *
+     * @param depth         number of tutorials to read ahead, 0 for none
+     * @param prefetchLinks whether to resolve the video links of those tutorials as well
+     */
+    public void setLookahead(int depth, boolean prefetchLinks) {
+        this.lookaheadDepth = depth;
+        this.prefetchLinks = prefetchLinks;
+    }
+
+    /**
+     * Sets the ffmpeg used to remux videos that are served as MPEG-TS segments or with a separate audio track.
+     *
+     * @param ffmpeg command that runs ffmpeg, {@code null} or empty to keep such videos as they are
+     */
+    public void setFfmpeg(String ffmpeg) {
+        this.ffmpeg = ffmpeg == null || ffmpeg.isEmpty() ? null : ffmpeg;
+    }
+
+    /**
+     * Adds another directory tutorials can be downloaded to. Each tutorial is placed on the root with the least
+     * running downloads that has enough free space for it.
+     *
+     * @param root additional output directory
+     */
+    public void addOutputRoot(File root) {
+        outputRoots.add(root);
+    }
+
+    /**
+     * Enables shortest-job-first scheduling. Before downloading anything, every tutorial is probed for its lesson
+     * count so that many small tutorials finish early rather than waiting behind one long series.
+     *
+     * @param shortestJobFirst whether to favor tutorials with less lessons
+     */
+    public void setShortestJobFirst(boolean shortestJobFirst) {
+        this.shortestJobFirst = shortestJobFirst;
+    }
+
+    /**
+     * Makes this bot resolve and measure every video of the queue before downloading any of them. The sizes are used
+     * for scheduling, for choosing output roots and for an estimate of the remaining time. This visits every lesson
+     * twice, since video links are resolved again right before they are downloaded.
+     *
+     * @param preflight whether to measure the queue first
+     */
+    public void setPreflight(boolean preflight) {
+        this.preflight = preflight;
+    }
+
+    /**
+     * Makes this bot read the queue file while working through it, for queues too large to be held in memory. The
+     * tutorials are downloaded in the order of the file, so this rules out the pre-flight and shortest-job-first, and
+     * repeated lines are dropped instead of having their lessons merged.
+     *
+     * @param streamQueue whether to stream the queue
+     */
+    public void setStreamQueue(boolean streamQueue) {
+        this.streamQueue = streamQueue;
+    }
+
+    /**
+     * @return current state of the downloads, or {@code null} before the bot started
+     */
+    DownloadEngine.Snapshot sampleDownloads() {
+        DownloadEngine engine = downloads;
+        return engine == null ? null : engine.snapshot();
+    }
+
+    /**
+     * @return time the browser spent working through the queue in milliseconds
+     */
+    long getScrapeMillis() {
+        long since = scrapeSince;
+        return scrapeMillis + (since > 0 ? System.currentTimeMillis() - since : 0);
+    }
+
+    /**
+     * @return {@code true} while the browser works through the queue
+     */
+    boolean isScraping() {
+        return scrapeSince > 0;
+    }
+
+    /**
+     * Makes this bot record every page it scrapes and the headers of every video it downloads.
+     *
+     * @param archive archive to record to, closed by the bot once its downloads are done
+     */
+    public void setArchive(PageArchive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Makes this bot work on a recorded run served by a {@link ReplayServer} instead of the real site. No login is
+     * performed.
+     *
+     * @param replay server to work on
+     * @throws MalformedURLException if the server has not been started
+     */
+    public void setReplay(ReplayServer replay) throws MalformedURLException {
+        homeURL = replay.getHomeURL();
+        replayHost = new URL(homeURL).getHost();
+    }
+
     /**
      * Verifies whether this bot is ready to start
      *
      * @return <code>true</code> if the bot has the necessary parameters to start; <code>false</code> otherwise.
      */
     public boolean hasParameters() {
-        return user != null && pass != null && outputDir != null && queue != null;
+        return user != null && pass != null && outputDir != null && (queue != null || source != null);
+    }
+
+    /**
+     * Makes this bot obtain its tutorials from a coordinator shared with other bots instead of the queue file.
+     *
+     * @param source source to lease tutorials from
+     */
+    public void setTutorialSource(TutorialSource source) {
+        this.source = source;
     }
 
     /**
-     * Opens the {@link #queue} file and adds the URLs contained in it to memory if they are valid.
+     * Opens the {@link #queue} file and adds the entries contained in it to memory if they can be parsed. See
+     * {@link QueueEntry} for the format of each line.
      *
      * @throws IOException if the queue was not found or could not be opened
      */
     private void populateTutList() throws IOException {
         log.info("[*] Populating tutorial queue");
+        if (streamQueue) {
+            source = new QueueStream(queue, url -> {
+                try {
+                    return isTutURL(url);
+                } catch (MalformedURLException e) {
+                    return false;
+                }
+            }, log);
+            if (preflight || shortestJobFirst) {
+                log.warning("Streamed queues are downloaded in file order. Not measuring tutorials");
+            }
+            log.finer(() -> "Streaming " + source.size() + " tutorial URLs from queue");
+            maxProgress = source.size() * 100;
+            updateTitle("0/" + source.size());
+            return;
+        }
         BufferedReader in = new BufferedReader(new FileReader(queue));
 
         // read each line from the file and add it to the list
         String line;
         while ((line = in.readLine()) != null) {
-            tutList.add(line.trim());
+            try {
+                QueueEntry entry = QueueEntry.parse(line, tutList.size());
+                if (entry != null && !mergeLessons(entry)) {
+                    tutList.add(entry);
+                }
+            } catch (IllegalArgumentException e) {
+                log.warning("Skipping queue line: " + line.trim() + " (" + e.getMessage() + ")");
+            }
         }
-        tutIterator = tutList.iterator(); // global iterator is useful
+        source = new TutorialScheduler(tutList, shortestJobFirst);
         in.close();
-        log.finer("Added " + tutList.size() + " tutorial URLs to queue");
+        log.finer(() -> "Added " + tutList.size() + " tutorial URLs to queue");
 
         // set max progress to reference on progress updates
         maxProgress = tutList.size() * 100;
@@ -138,12 +415,21 @@ public class Bot extends Task {
      * @param keepLogin whether to login in persistently
      */
     private void login(WebDriver driver, boolean keepLogin) {
+        if (replayHost != null) {
+            log.info("[*] Replaying recorded run");
+            driver.get(homeURL);
+            return;
+        }
         log.info("[*] Logging in");
 
+        // a stored session spares us the login form. this leaves the browser on the home page either way
+        if (restoreSession(driver)) {
+            log.finer("Restored previous session");
+            return;
+        }
+
         // Go to Login page
-        driver.get("https://www.digitaltutors.com");
-        WebElement link = waitForElement(driver, // sign in button
-                By.xpath("//*[@id='ulLoggedInStatus']/li[3]/div/a"));
+        WebElement link = waitForElement(driver, SIGN_IN_LINK); // sign in button
 
         link.click();
         waitForTitle(driver, "login");
@@ -165,6 +451,177 @@ public class Bot extends Task {
 
         button.click();
         waitForTitle(driver, "digital-tutors");
+
+        // remember the session for the next run
+        if (keepLogin) {
+            try {
+                Set<Cookie> cookies = driver.manage().getCookies();
+                sessionStore.save(cookies);
+                log.finer(() -> "Stored " + cookies.size() + " session cookies");
+            } catch (IOException e) {
+                log.warning("Could not store session: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Injects the cookies of a previous login into the browser and checks whether the server still accepts them.
+     *
+     * @param driver browser to perform the action with
+     * @return {@code true} if the browser is logged in; {@code false} if a full login is required, in which case the
+     * browser is on the home page
+     */
+    private boolean restoreSession(WebDriver driver) {
+        Set<Cookie> cookies = sessionStore.load();
+        if (cookies == null) {
+            driver.get(homeURL);
+            return false;
+        }
+
+        // cookies can only be added for the domain that is currently loaded, robots.txt is the cheapest page there
+        driver.get(homeURL + "/robots.txt");
+        for (Cookie cookie : cookies) {
+            try {
+                driver.manage().addCookie(cookie);
+            } catch (WebDriverException e) {
+                log.finest(() -> "Could not restore cookie: " + cookie.getName());
+            }
+        }
+
+        // the sign in link only shows up for visitors that are not logged in
+        driver.get(homeURL);
+        if (driver.findElements(SIGN_IN_LINK).isEmpty()) {
+            return true;
+        }
+
+        log.finer("Stored session has expired");
+        driver.manage().deleteAllCookies();
+        try {
+            sessionStore.clear();
+        } catch (IOException e) {
+            log.warning("Could not remove expired session: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Folds an entry that only asks for some lessons into an earlier entry of the same tutorial, as written by the
+     * dead-letter file of {@link DownloadEngine} when several lessons of a tutorial failed.
+     *
+     * @param entry entry that was just read
+     * @return {@code true} if the entry was merged and must not be added on its own
+     */
+    private boolean mergeLessons(QueueEntry entry) {
+        if (entry.getLessonIDs() == null) {
+            return false;
+        }
+        for (QueueEntry other : tutList) {
+            if (other.getURL().equals(entry.getURL()) && other.getLessonIDs() != null) {
+                other.getLessonIDs().addAll(entry.getLessonIDs());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Visits every tutorial in the queue and counts its lessons so that the {@link TutorialScheduler} can order them by
+     * size.
+     * Tutorials that cannot be probed keep an unknown size and are scheduled after the probed ones.
+     *
+     * @param driver browser to perform the action with
+     */
+    private void probeTutorials(WebDriver driver) {
+        log.info("[*] Probing tutorial sizes");
+        for (QueueEntry entry : tutList) {
+            try {
+                if (!isTutURL(entry.getURL())) {
+                    continue; // nextTut() reports bad URLs
+                }
+                driver.get(entry.getURL());
+                driver.findElement(PLAYER_LINK).click();
+                List<WebElement> lessons = waitForAllElements(driver, LESSON_DIVS);
+                entry.setLessonCount(lessons.size());
+                log.finer(() -> lessons.size() + " lessons: " + entry.getURL());
+            } catch (MalformedURLException | WebDriverException e) {
+                log.warning("Could not probe tutorial: " + entry.getURL());
+            }
+        }
+    }
+
+    /**
+     * Resolves the video links of every tutorial in the queue and measures the videos with HEAD requests, so that the
+     * size of each tutorial and of the whole queue is known before the first video is downloaded. Tutorials that
+     * cannot be measured keep an unknown size. The HEAD requests of a tutorial are answered while the next one is
+     * scraped. Only the sizes are kept: the links are signed and expire, so they are resolved again when the tutorial
+     * is downloaded.
+     *
+     * @param driver browser to perform the action with
+     * @throws InterruptedException if interrupted while waiting for the HEAD requests
+     */
+    private void preflightTutorials(WebDriver driver) throws InterruptedException {
+        log.info("[*] Measuring tutorials");
+        manifest = new SizeManifest(8, log);
+        Map<QueueEntry, Future<Long>> measured = new LinkedHashMap<>();
+        try {
+            for (QueueEntry entry : tutList) {
+                try {
+                    if (!isTutURL(entry.getURL())) {
+                        continue; // nextTut() reports bad URLs
+                    }
+                    driver.get(entry.getURL());
+                    String baseURL = driver.getCurrentUrl() + "#play-";
+                    openPlayer(driver, null);
+                    List<LessonInfo> lessons = getLessons(driver);
+                    if (entry.getLessonIDs() != null) {
+                        lessons.removeIf(lesson -> !entry.getLessonIDs().contains(lesson.getID()));
+                    }
+                    if (tabCount > 1 && dtCloudPlayerEnabled) {
+                        resolveLinksInTabs(driver, lessons, baseURL);
+                    }
+                    for (LessonInfo lesson : lessons) {
+                        if (lesson.getLink() == null) {
+                            resolveLink(driver, lesson, baseURL);
+                        }
+                    }
+                    measured.put(entry, manifest.measure(entry, lessons));
+                } catch (MalformedURLException | WebDriverException e) {
+                    log.warning("Could not measure tutorial: " + entry.getURL());
+                }
+            }
+
+            // the scheduler needs every size, so wait for the requests still out
+            for (Map.Entry<QueueEntry, Future<Long>> tutorial : measured.entrySet()) {
+                try {
+                    long bytes = tutorial.getValue().get();
+                    log.finer(() -> String.format("%d lessons, %.1f MB: %s", tutorial.getKey().getLessonCount(),
+                            bytes / (1024.0 * 1024.0), tutorial.getKey().getURL()));
+                } catch (ExecutionException e) {
+                    log.warning("Could not measure tutorial: " + tutorial.getKey().getURL());
+                }
+            }
+        } finally {
+            manifest.shutdown();
+        }
+        log.info("[*] Queue: " + manifest.describe());
+    }
+
+    /**
+     * Estimates the remaining time of the run from the measured queue size and the bytes downloaded so far.
+     *
+     * @return text to append to the progress, empty if there is nothing to base an estimate on
+     */
+    private String describeETA() {
+        if (manifest == null || downloads == null) {
+            return "";
+        }
+        double rate = downloads.getAggregateThroughput();
+        if (rate == 0) {
+            return "";
+        }
+        long remaining = Math.max(manifest.getTotalBytes() - downloads.getTransferred(), 0);
+        long seconds = (long) (remaining / rate);
+        return String.format(" - ETA %d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
     }
 
     /**
@@ -176,10 +633,11 @@ public class Bot extends Task {
      */
     private String nextTut(WebDriver driver) throws IOException {
 
-        while (tutIterator.hasNext()) {
+        QueueEntry entry;
+        while ((entry = lookahead != null ? lookahead.next() : source.next()) != null) {
             log.info("[*] Going to next tutorial");
-            String nextURL = tutIterator.next(); // URLs were read in by
-            // populateTutList()
+            maxProgress = source.size() * 100; // a coordinator only tells the total with the first tutorial
+            String nextURL = entry.getURL();
 
             // Check if URL is usable
             try {
@@ -187,29 +645,78 @@ public class Bot extends Task {
                     throw new MalformedURLException();
             } catch (MalformedURLException e) {
                 log.warning("Bad URL: " + nextURL);
+                source.completed(entry);
                 incrementGlobalProgress(); // update progress
                 continue; // go to next URL in list
             }
 
-            driver.get(nextURL);
+            String title;
+            Lookahead.Prefetch prefetch = entry.getPrefetch();
+            if (prefetch != null) {
+                log.finer("Tutorial page was read ahead");
+                tutURL = new URL(prefetch.url);
+                title = prefetch.title;
+            } else {
+                long navigationStart = System.currentTimeMillis();
+                driver.get(nextURL);
+                recordPage(driver, navigationStart);
+                tutURL = new URL(driver.getCurrentUrl()); // store for later
+                title = driver.getTitle();
+            }
 
-            tutURL = new URL(driver.getCurrentUrl()); // store for later
             // get the name of the tutorial series and create folder
-            String[] splitTitle = driver.getTitle().split(">");
+            String[] splitTitle = title.split(">");
             for (int i = 0; i < splitTitle.length; i++) {
                 splitTitle[i] = splitTitle[i].trim();
             }
+            if (splitTitle.length < 3) {
+                log.warning("Could not read the tutorial name from the page title: " + title);
+                source.completed(entry);
+                incrementGlobalProgress(); // update progress
+                continue; // go to next URL in list
+            }
             log.info("[*] Tutorial Name: " + splitTitle[2]);
-            tutDir = new File(outputDir, splitTitle[2]);
-            tutReferenceDir = new File(tutDir, "References");
+            if (entry.getDeadline() != null && entry.getDeadline().isBefore(LocalDate.now())) {
+                log.warning("Deadline has passed: " + entry.getDeadline());
+            }
+
+            // entries that only ask for some lessons or are marked for resuming complete an existing folder
+            File existing = outputRoots.find(splitTitle[2]);
+            if (existing != null && entry.isResume()) {
+                log.finer("Resuming tutorial in existing folder");
+                events.post(new BotEvent.TutorialStarted(nextURL, splitTitle[2]));
+                tutEntry = entry;
+                tutDir = existing;
+                tutRoot = existing.getParentFile();
+                tutReferenceDir = new File(tutDir, "References");
+                return nextURL;
+            }
 
             // check whether tutorial was already downloaded
-            if (tutDir.exists()) {
+            if (existing != null) {
                 log.warning("Tutorial folder already exists");
+                source.completed(entry);
                 incrementGlobalProgress(); // update progress
                 continue; // go to next URL in list
             }
 
+            // pick a root with enough room for the whole tutorial before any video is transferred
+            tutRoot = outputRoots.place(nextURL, entry.getTotalBytes());
+            if (tutRoot == null) {
+                if (!entry.isDeferred()) {
+                    log.warning("Not enough space for tutorial. Deferring it");
+                    entry.setDeferred(true);
+                    source.defer(entry);
+                } else {
+                    log.warning("Not enough space for tutorial. Skipping it");
+                    source.completed(entry);
+                    incrementGlobalProgress(); // update progress
+                }
+                continue; // go to next URL in list
+            }
+            tutDir = new File(tutRoot, splitTitle[2]);
+            tutReferenceDir = new File(tutDir, "References");
+
             // create directories
             log.finer("Creating folder");
             //noinspection ResultOfMethodCallIgnored
@@ -217,6 +724,8 @@ public class Bot extends Task {
             //noinspection ResultOfMethodCallIgnored
             tutReferenceDir.mkdir();
 
+            events.post(new BotEvent.TutorialStarted(nextURL, splitTitle[2]));
+            tutEntry = entry;
             return nextURL;
         }
         log.info("[*] Finished URL queue");
@@ -230,16 +739,22 @@ public class Bot extends Task {
     }
 
     /**
-     * The work horse of the bot class. Concurrently downloads all the videos from the tutorial page.
+     * Opens the video player of the current tutorial page, switching to the cloud player if possible. Sets
+     * {@link #dtCloudPlayerEnabled} to the player in use.
      *
-     * @param driver browser to perform the action with
-     * @throws IOException if something went wrong downloading the files
+     * @param driver    browser on a tutorial page, or anywhere if the player URL is given
+     * @param playerURL URL of the player if it is already known, {@code null} to follow the link on the page
      */
-    private void downloadVideos(WebDriver driver) throws IOException {
+    private void openPlayer(WebDriver driver, String playerURL) {
+        long start = System.currentTimeMillis();
         // Navigate to the video player
         log.info("[*] Going to video player");
-        WebElement link = driver.findElement(By.xpath("//a[contains(@href, 'play-')]"));
-        link.click();
+        if (playerURL != null) {
+            driver.get(playerURL);
+        } else {
+            WebElement link = driver.findElement(PLAYER_LINK);
+            link.click();
+        }
 
         // Switching needs to be done before finding elements since page is
         // refreshed
@@ -262,58 +777,445 @@ public class Bot extends Task {
         } else {
             log.finer("Cloud player found");
         }
+        recordPage(driver, start);
+    }
+
+    /**
+     * The work horse of the bot class. Concurrently downloads all the videos from the tutorial page.
+     *
+     * @param driver browser to perform the action with
+     * @throws IOException if something went wrong downloading the files
+     */
+    private void downloadVideos(WebDriver driver) throws IOException {
+        long scrapeStart = System.currentTimeMillis();
+
+        Lookahead.Prefetch prefetch = tutEntry.getPrefetch();
+        tutEntry.setPrefetch(null);
+        if (prefetch != null && prefetch.lessons != null) {
+            // the lookahead found the cloud player and read its lessons, every lesson page is opened directly from here
+            log.finer("Video player was read ahead");
+            dtCloudPlayerEnabled = true;
+        } else {
+            openPlayer(driver, prefetch != null ? prefetch.playerURL : null);
+        }
 
         log.info("[*] Downloading videos");
 
-        // Go through the list extract the divs for each video
-        List<WebElement> videoList = waitForAllElements(driver,
-                By.xpath("//div[@class='scrollable_container']/div[contains(@id, 'divLesson')]"));
+        // 1. Get relevant data of every video
+        List<LessonInfo> videoList = prefetch != null && prefetch.lessons != null
+                ? prefetch.lessons
+                : getLessons(driver);
+        if (tutEntry.getLessonIDs() != null) {
+            videoList.removeIf(lesson -> !tutEntry.getLessonIDs().contains(lesson.getID()));
+            if (videoList.isEmpty()) {
+                log.warning("None of the requested lessons were found");
+                outputRoots.unplace(tutEntry.getURL());
+                source.completed(tutEntry);
+                incrementGlobalProgress(); // update progress
+                return;
+            }
+        }
+        if (tutEntry.isResume()) {
+            // finished videos only exist under their final name (.ts for streams kept as they are), unfinished ones
+            // end in .part
+            videoList.removeIf(lesson -> new File(tutDir, lesson.getFileName()).exists()
+                    || new File(tutDir, lesson.getFileName().replaceFirst("\\.mp4$", ".ts")).exists());
+            if (videoList.isEmpty()) {
+                log.finer("All lessons were already downloaded");
+                outputRoots.unplace(tutEntry.getURL());
+                source.completed(tutEntry);
+                incrementGlobalProgress(); // update progress
+                return;
+            }
+        }
+
+        // without a pre-flight the size is only known once the downloads start, so hold an estimate until then
+        if (tutEntry.getTotalBytes() < 0) {
+            outputRoots.hold(tutEntry.getURL(), tutRoot, videoList.size() * downloads.getAverageTransfer());
+        }
 
-        Iterator<WebElement> itr = videoList.iterator();
         // video URLs are based on appending the video id to a base URL
         String baseURL = tutURL.toString() + "#play-"; // to append to
 
-        String videoTitle;
-        String videoNumber;
-        String videoID;
+        // resolve as many links as possible in parallel, the rest is done one by one below
+        if (tabCount > 1 && dtCloudPlayerEnabled) {
+            resolveLinksInTabs(driver, videoList, baseURL);
+        }
+
         String videoLink;
         File video; // pointer to local file
-
-        WebElement element; // takes on each video div
-        ExecutorService pool = Executors.newFixedThreadPool(5); // downloads are concurrent
+        int queued = 0;
 
         // set up progress so that each video download takes an even piece of 100 units
         int videoProgress = 100 / videoList.size();
 
-        while (itr.hasNext()) {
+        for (LessonInfo lesson : videoList) {
 
-            element = itr.next();
+            videoLink = lesson.getLink();
 
-            // 1. Get relevant data
-            videoTitle = element.getAttribute("data-title");
-            videoNumber = element.getAttribute("data-position");
-            videoID = element.getAttribute("data-lesson_id");
-
-            // 2. Navigate to the video page
-            log.fine("<> Navigating to video page: (" + videoNumber + ") " + videoTitle);
-            driver.get(baseURL + videoID);
-
-            // 3. Get the link to the video
-            videoLink = getVideoLink(driver);
             if (videoLink == null) {
-                continue;
+                // 2. and 3. Navigate to the video page and get the link to the video
+                videoLink = resolveLink(driver, lesson, baseURL);
+                if (videoLink == null) {
+                    continue;
+                }
+            } else {
+                log.fine(() -> "<> Video link already resolved: (" + lesson.getNumber() + ") " + lesson.getTitle());
             }
 
             // 4. Download video with correct name
-            video = new File(tutDir, videoNumber + " - " + videoTitle + ".mp4");
-            pool.submit(new DownloadTask(videoLink, video));
+            video = new File(tutDir, lesson.getFileName());
+            downloads.submit(new DownloadTask(downloads, lesson, tutEntry.getURL(), video, tutRoot));
+            queued++;
             log.finer("Downloading");
             incrementTutProgress(videoProgress); // update progress
         }
-        pool.shutdown();
+        // the tutorial is only done once its last video is, which may be long after scraping
+        QueueEntry entry = tutEntry;
+        downloads.whenDone(entry.getURL(), () -> {
+            outputRoots.unplace(entry.getURL());
+            source.completed(entry);
+        });
+
+        String timing = navigationTimer.report();
+        if (timing != null) {
+            log.finer(timing);
+        }
+        events.post(new BotEvent.TutorialScraped(tutEntry.getURL(), videoList.size(), queued,
+                System.currentTimeMillis() - scrapeStart));
         incrementGlobalProgress(); // update progress
     }
 
+    /**
+     * Reads a tutorial ahead of time in the second browser, which is launched on first use. Runs on the thread of the
+     * {@link #lookahead}, so it must not touch the state the bot keeps about the current tutorial. The player is not
+     * switched, since that would change the setting for the main browser as well.
+     *
+     * @param entry tutorial to read, receives what was read
+     */
+    private void prefetch(QueueEntry entry) {
+        try {
+            if (!isTutURL(entry.getURL())) {
+                return; // nextTut() reports bad URLs
+            }
+        } catch (MalformedURLException e) {
+            return;
+        }
+
+        try {
+            if (lookaheadDriver == null) {
+                lookaheadDriver = acquireDriver();
+            }
+            WebDriver driver = lookaheadDriver;
+            long start = System.currentTimeMillis();
+            driver.get(entry.getURL());
+            recordPage(driver, start);
+            String url = driver.getCurrentUrl();
+            String title = driver.getTitle();
+            String playerURL = driver.findElement(PLAYER_LINK).getAttribute("href");
+
+            List<LessonInfo> lessons = null;
+            if (playerURL != null) {
+                start = System.currentTimeMillis();
+                driver.get(playerURL);
+                if (existsElement(driver, By.xpath("//a[@title='Pause']"))) {
+                    lessons = getLessons(driver);
+                    recordPage(driver, start);
+                    if (prefetchLinks && tabCount > 1) {
+                        resolveLinksInTabs(driver, lessons, url + "#play-");
+                    }
+                }
+            }
+            entry.setPrefetch(playerURL == null ? null : new Lookahead.Prefetch(url, title, playerURL, lessons));
+            log.finer(() -> "Read ahead: " + entry.getURL());
+        } catch (WebDriverException e) {
+            log.finer(() -> "Could not read ahead: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the second browser to the pool, or closes it if it is private.
+     */
+    private void releaseLookaheadDriver() {
+        if (lookaheadDriver == null) {
+            return;
+        }
+        if (driverPool != null) {
+            driverPool.release(lookaheadDriver);
+        } else {
+            lookaheadDriver.quit();
+        }
+        lookaheadDriver = null;
+    }
+
+    /**
+     * Navigates to the page of a lesson and reads its video link.
+     *
+     * @param driver  browser to perform the action with
+     * @param lesson  lesson to resolve, receives the link
+     * @param baseURL lesson URL without the lesson id
+     * @return URL to the video source, or {@code null} if it could not be found
+     */
+    private String resolveLink(WebDriver driver, LessonInfo lesson, String baseURL) {
+        log.fine(() -> "<> Navigating to video page: (" + lesson.getNumber() + ") " + lesson.getTitle());
+        long start = System.currentTimeMillis();
+        navigationTimer.startNavigation();
+        driver.get(baseURL + lesson.getID());
+
+        navigationTimer.startResolving();
+        String videoLink = getVideoLink(driver);
+        navigationTimer.finishLesson();
+        log.finest(navigationTimer::describeLast);
+        if (videoLink == null) {
+            events.post(new BotEvent.LinkFailed(lesson.getID()));
+            return null;
+        }
+        lesson.setLink(videoLink);
+        lesson.setAlternates(readAlternateSources(driver, videoLink));
+        recordPage(driver, start);
+        events.post(new BotEvent.LinkResolved(lesson.getID(), videoLink, "page",
+                navigationTimer.getLastResolve()));
+        return videoLink;
+    }
+
+    /**
+     * Reads the metadata of all lessons listed in the video player.
+     *
+     * @param driver browser on the video player page
+     * @return lessons in the order they are listed
+     */
+    private List<LessonInfo> getLessons(WebDriver driver) {
+        List<WebElement> videoList = waitForAllElements(driver, LESSON_DIVS);
+
+        if (bulkExtraction && driver instanceof JavascriptExecutor) {
+            try {
+                return extractLessons((JavascriptExecutor) driver);
+            } catch (WebDriverException | ClassCastException e) {
+                log.warning("Bulk extraction failed. Reading lessons one by one");
+            }
+        }
+
+        // every attribute is a round trip to the browser
+        List<LessonInfo> lessons = new ArrayList<>();
+        for (WebElement element : videoList) {
+            lessons.add(new LessonInfo(element.getAttribute("data-title"), element.getAttribute("data-position"),
+                    element.getAttribute("data-lesson_id"), null));
+        }
+        return lessons;
+    }
+
+    /**
+     * Reads the metadata of all lessons in a single round trip to the browser. If a lesson div carries an attribute
+     * that points at a video file, the link is taken from there and the lesson page need not be visited.
+     *
+     * @param executor browser on the video player page
+     * @return lessons in the order they are listed
+     */
+    @SuppressWarnings("unchecked")
+    private List<LessonInfo> extractLessons(JavascriptExecutor executor) {
+        List<Object> result = (List<Object>) executor.executeScript(EXTRACT_LESSONS_SCRIPT);
+
+        List<LessonInfo> lessons = new ArrayList<>();
+        for (Object item : result) {
+            Map<String, Object> lesson = (Map<String, Object>) item;
+            String src = (String) lesson.get("src");
+            lessons.add(new LessonInfo((String) lesson.get("title"), (String) lesson.get("position"),
+                    (String) lesson.get("id"), src));
+            if (src != null) {
+                events.post(new BotEvent.LinkResolved((String) lesson.get("id"), src, "listed", 0));
+            }
+        }
+        log.finest(() -> "Extracted " + lessons.size() + " lessons in bulk");
+        return lessons;
+    }
+
+    /**
+     * Resolves the video links of several lessons at once by opening each lesson in its own tab of the same browser
+     * and harvesting the cloud player sources round-robin as they become ready. This overlaps the player waits of
+     * the lessons instead of adding them up. Lessons that do not become ready in time keep no link so that they are
+     * resolved one by one afterwards.
+     *
+     * @param driver  browser on the video player page
+     * @param lessons lessons of the tutorial
+     * @param baseURL lesson URL without the lesson id
+     */
+    private void resolveLinksInTabs(WebDriver driver, List<LessonInfo> lessons, String baseURL) {
+        log.finer(() -> "Resolving video links in " + tabCount + " tabs");
+        String mainTab = driver.getWindowHandle();
+        Deque<LessonInfo> pending = new ArrayDeque<>();
+        for (LessonInfo lesson : lessons) {
+            if (lesson.getLink() == null) {
+                pending.add(lesson);
+            }
+        }
+
+        // open the tabs, each one starting on its own lesson
+        List<String> tabs = new ArrayList<>();
+        Map<String, LessonInfo> assigned = new HashMap<>();
+        Map<String, Long> assignedAt = new HashMap<>();
+        Map<String, String> previousLink = new HashMap<>(); // the player keeps showing it until the next one loads
+        while (tabs.size() < tabCount && !pending.isEmpty()) {
+            Set<String> before = driver.getWindowHandles();
+            LessonInfo lesson = pending.poll();
+            ((JavascriptExecutor) driver).executeScript("window.open(arguments[0], arguments[1]);",
+                    baseURL + lesson.getID(), "dtbot-tab-" + tabs.size());
+            Set<String> after = new HashSet<>(driver.getWindowHandles());
+            after.removeAll(before);
+            if (after.isEmpty()) {
+                log.warning("Could not open tab");
+                pending.push(lesson);
+                break;
+            }
+            String tab = after.iterator().next();
+            tabs.add(tab);
+            assigned.put(tab, lesson);
+            assignedAt.put(tab, System.currentTimeMillis());
+        }
+
+        // visit the tabs in turn until every tab is out of lessons
+        int resolved = 0;
+        while (!assigned.isEmpty()) {
+            boolean progress = false;
+            for (String tab : tabs) {
+                LessonInfo lesson = assigned.get(tab);
+                if (lesson == null) {
+                    continue;
+                }
+                driver.switchTo().window(tab);
+
+                String link = readCloudPlayerSource(driver);
+                boolean ready = link != null && !link.equals(previousLink.get(tab));
+                boolean expired = System.currentTimeMillis() - assignedAt.get(tab) > TAB_TIMEOUT;
+                if (!ready && !expired) {
+                    continue;
+                }
+
+                progress = true;
+                if (ready) {
+                    lesson.setLink(link);
+                    lesson.setAlternates(readAlternateSources(driver, link));
+                    recordPage(driver, assignedAt.get(tab));
+                    previousLink.put(tab, link);
+                    resolved++;
+                    events.post(new BotEvent.LinkResolved(lesson.getID(), link, "tab",
+                            System.currentTimeMillis() - assignedAt.get(tab)));
+                    log.finest(() -> "Resolved in tab: (" + lesson.getNumber() + ") " + lesson.getTitle());
+                }
+
+                // hand the tab its next lesson
+                LessonInfo next = pending.poll();
+                if (next == null) {
+                    assigned.remove(tab);
+                } else {
+                    assigned.put(tab, next);
+                    assignedAt.put(tab, System.currentTimeMillis());
+                    driver.get(baseURL + next.getID());
+                }
+            }
+
+            if (!progress) {
+                try {
+                    Thread.sleep(TAB_POLL_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        for (String tab : tabs) {
+            driver.switchTo().window(tab);
+            driver.close();
+        }
+        driver.switchTo().window(mainTab);
+        int done = resolved;
+        log.finer(() -> "Resolved " + done + " of " + lessons.size() + " video links in tabs");
+    }
+
+    /**
+     * Reads the video source of the cloud player without waiting for it.
+     *
+     * @param driver browser on a video page
+     * @return URL to the video source, or {@code null} if the player is not ready yet
+     */
+    private String readCloudPlayerSource(WebDriver driver) {
+        try {
+            if (driver.findElements(By.xpath("//a[@title='Pause']")).isEmpty()) {
+                return null;
+            }
+            List<WebElement> sources = driver.findElements(By.xpath("//source"));
+            String link = sources.isEmpty() ? null : sources.get(0).getAttribute("src");
+            return link == null || link.isEmpty() ? null : link;
+        } catch (StaleElementReferenceException e) {
+            return null; // player was replaced while reading it
+        }
+    }
+
+    /**
+     * Reads the other sources the page offers for the same video without waiting for them. They are raced against
+     * the primary source when it turns out slow, see {@link DownloadTask}. Only sources of the same type as the
+     * primary one count as mirrors, since the others are usually different formats of the video.
+     *
+     * @param driver  browser on a video page
+     * @param primary the source that will be downloaded first
+     * @return alternative sources, possibly empty
+     */
+    private List<String> readAlternateSources(WebDriver driver, String primary) {
+        List<String> alternates = new ArrayList<>();
+        if (!(driver instanceof JavascriptExecutor)) {
+            return alternates;
+        }
+        try {
+            // source and type of every source element in a single round trip
+            Object result = ((JavascriptExecutor) driver).executeScript(SOURCES_SCRIPT);
+            if (!(result instanceof List) || ((List<?>) result).size() < 2) {
+                return alternates; // nothing besides the primary source
+            }
+            List<String[]> sources = new ArrayList<>();
+            String primaryType = null;
+            for (Object item : (List<?>) result) {
+                List<?> pair = (List<?>) item;
+                String src = (String) pair.get(0);
+                String type = pair.get(1) == null ? "" : (String) pair.get(1);
+                if (src == null || src.isEmpty()) {
+                    continue;
+                }
+                if (src.equals(primary)) {
+                    primaryType = type;
+                } else {
+                    sources.add(new String[]{src, type});
+                }
+            }
+
+            String extension = getExtension(primary);
+            for (String[] source : sources) {
+                boolean sameType = primaryType != null && !primaryType.isEmpty() && !source[1].isEmpty()
+                        ? primaryType.equalsIgnoreCase(source[1])
+                        : extension.equalsIgnoreCase(getExtension(source[0]));
+                if (sameType && !alternates.contains(source[0])) {
+                    alternates.add(source[0]);
+                }
+            }
+        } catch (WebDriverException | ClassCastException e) {
+            // the player was replaced while reading it, go without alternatives
+        }
+        return alternates;
+    }
+
+    /**
+     * @return extension of the path of a link including the dot, or an empty string if it has none
+     */
+    private static String getExtension(String link) {
+        String path;
+        try {
+            path = new URL(link).getPath();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+        int dot = path.lastIndexOf('.');
+        return dot > path.lastIndexOf('/') ? path.substring(dot) : "";
+    }
+
     /**
      * Obtains the link to the video source on the current video page.
      *
@@ -412,15 +1314,21 @@ public class Bot extends Task {
         return true;
     }
 
-    @SuppressWarnings("unused")
-    private void writeHTMLtoFile(WebDriver driver, String fileName) throws FileNotFoundException {
-        writeHTMLtoFile(driver.getPageSource(), fileName);
-    }
-
-    private void writeHTMLtoFile(String html, String fileName) throws FileNotFoundException {
-        PrintWriter out = new PrintWriter(fileName);
-        out.print(html);
-        out.close();
+    /**
+     * Stores the current page in the {@link #archive} if the bot is recording.
+     *
+     * @param driver browser on the page to record
+     * @param start  when the navigation to the page started, the difference is replayed as its latency
+     */
+    private void recordPage(WebDriver driver, long start) {
+        if (archive == null) {
+            return;
+        }
+        try {
+            archive.recordPage(driver.getCurrentUrl(), driver.getPageSource(), System.currentTimeMillis() - start);
+        } catch (WebDriverException e) {
+            log.finest(() -> "Could not record page: " + e.getMessage());
+        }
     }
 
     /**
@@ -466,7 +1374,7 @@ public class Bot extends Task {
     private void displayCookies(WebDriver driver) {
         Set<Cookie> allCookies = driver.manage().getCookies();
         for (Cookie cookie : allCookies) {
-            log.finer(String.format("%S -> %S", cookie.getName(), cookie.getValue()));
+            log.finer(() -> String.format("%S -> %S", cookie.getName(), cookie.getValue()));
         }
     }
 
@@ -488,7 +1396,7 @@ public class Bot extends Task {
      * @return {@code true} if URL is valid, {@code false} otherwise
      */
     private boolean isTutURL(URL url) {
-        boolean hostCorrect = url.getHost().contains("digitaltutors");
+        boolean hostCorrect = url.getHost().contains("digitaltutors") || url.getHost().equals(replayHost);
         boolean pathCorrect = url.getPath().contains("tutorial");
         return hostCorrect && pathCorrect;
     }
@@ -521,65 +1429,118 @@ public class Bot extends Task {
     }
 
 
-    /**
-     * A runnable task that represents a single video download. This class is instantiated whenever a new background
-     * thread to download a video is required and is part of a larger system of concurrent downloads.
-     */
-    private class DownloadTask implements Runnable {
-
-        private URL link; // source to download from
-        private File file; // file to do download too
-
-        public DownloadTask(String link, File file) throws MalformedURLException {
-            this(new URL(link), file);
-
-        }
-
-        public DownloadTask(URL url, File file) {
-            this.link = url;
-            this.file = file;
-        }
-
-        @Override
-        public void run() {
-            for (int i = 0; i < 3; i++)
-                try {
-                    FileUtils.copyURLToFile(link, file, 1000, 1000); // download the video
-                    break;
-                } catch (Exception e) {
-                    if (i < 2) // retries to download video twice
-                        log.warning("Retrying video download: " + file.getName());
-                    else
-                        log.warning("Could not download video: " + file.getName());
-                }
-        }
-    }
-
     /**
      * Awakens the bot and initiates the login and download procedures
      *
      * @return always returns {@code null} as required by the super class in {@link #call() call}.
      */
     public Void start() {
-        WebDriver driver = new FirefoxDriver();
+        WebDriver driver = null;
+        // downloads are concurrent and keep running while the next tutorial is scraped. lessons that keep failing
+        // are collected next to the queue so that the file can be used as a queue later on
+        File deadLetterFile = queue != null
+                ? new File(queue.getAbsoluteFile().getParentFile(), "failed-" + queue.getName())
+                : new File(outputDir, "failed-queue.txt");
+        events = new EventLog(new File(System.getProperty("user.home"), ".dtbot" + File.separator + "events.jsonl"));
+        downloads = new DownloadEngine(5, outputRoots, deadLetterFile, events, log);
+        downloads.setArchive(archive);
+        downloads.setFfmpeg(ffmpeg);
 
         try {
-            populateTutList();
-            login(driver, true);
+            boolean local = source == null; // tutorials leased from a coordinator are already scheduled
+            if (local) {
+                populateTutList();
+            }
+            driver = acquireDriver();
+            scrapeSince = System.currentTimeMillis();
+            if (local && !streamQueue && preflight) {
+                preflightTutorials(driver);
+            } else if (local && !streamQueue && shortestJobFirst) {
+                probeTutorials(driver);
+            }
+            if (lookaheadDepth > 0) {
+                lookahead = new Lookahead(source, lookaheadDepth, this::prefetch, log);
+            }
             while (true) {
                 if (nextTut(driver) == null) {
                     // ran out of tutorials in the queue
                     break;
                 }
                 downloadVideos(driver);
+
+                // replace browsers that have grown too large
+                if (driverPool != null) {
+                    driverPool.recordTutorial(driver);
+                    if (driverPool.isWornOut(driver)) {
+                        log.finer("Recycling browser");
+                        driverPool.release(driver);
+                        driver = null;
+                        driver = acquireDriver();
+                    }
+                }
             }
         } catch (Exception e) {
             log.log(Level.SEVERE, e.getMessage());
         }
+        if (scrapeSince > 0) {
+            scrapeMillis += System.currentTimeMillis() - scrapeSince;
+            scrapeSince = 0;
+        }
+
+        if (driver != null) {
+            if (driverPool != null) {
+                driverPool.release(driver);
+            } else {
+                driver.quit();
+            }
+        }
+        if (lookahead != null) {
+            lookahead.close(this::releaseLookaheadDriver);
+        }
+
+        // let the remaining downloads and retries of the last tutorials finish
+        try {
+            downloads.awaitCompletion();
+        } catch (InterruptedException e) {
+            log.warning("Interrupted while waiting on downloads");
+        }
+        if (source != null) {
+            source.close();
+        }
+        if (archive != null) {
+            archive.close();
+        }
+        events.close();
+        if (events.getDropped() > 0) {
+            log.finer(() -> events.getDropped() + " events could not be logged");
+        }
 
         return null; // necessary for Task class call() signature
     }
 
+    /**
+     * Obtains a logged in browser, either from the {@link #driverPool} or by launching a new one.
+     *
+     * @return browser owned by this bot until it is released
+     */
+    private WebDriver acquireDriver() {
+        if (driverPool == null) {
+            WebDriver driver = browserProfile.createDriver();
+            login(driver, true);
+            return driver;
+        }
+
+        WebDriver driver = driverPool.acquire();
+        if (driverPool.isLoggedIn(driver, user)) {
+            log.finer("Reusing logged in browser");
+        } else {
+            driver.manage().deleteAllCookies(); // may belong to a different user
+            login(driver, true);
+            driverPool.setLoggedIn(driver, user);
+        }
+        return driver;
+    }
+
     @Override
     protected Void call() throws Exception {
         if (!hasParameters()) {
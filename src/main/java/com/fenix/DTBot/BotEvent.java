@@ -0,0 +1,234 @@
+package com.fenix.DTBot;
+
+/**
+ * Something that happened while the bot was running. Events only hold the raw values they describe; turning them into
+ * text is left to {@link #toJSON()}, which runs on the writer thread of the {@link EventLog} so that the scrape and
+ * download threads never pay for formatting.
+ */
+abstract class BotEvent {
+
+    private final long time = System.currentTimeMillis();
+
+    /**
+     * @return the event as a single line JSON object
+     */
+    String toJSON() {
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"time\":").append(time);
+        field(json, "type", getClass().getSimpleName());
+        appendFields(json);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Appends the fields specific to the event, each preceded by a comma.
+     *
+     * @param json JSON object under construction
+     */
+    protected abstract void appendFields(StringBuilder json);
+
+    static void field(StringBuilder json, String name, long value) {
+        json.append(",\"").append(name).append("\":").append(value);
+    }
+
+    static void field(StringBuilder json, String name, boolean value) {
+        json.append(",\"").append(name).append("\":").append(value);
+    }
+
+    static void field(StringBuilder json, String name, String value) {
+        json.append(",\"").append(name).append("\":");
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * The bot moved on to a new tutorial.
+     */
+    static final class TutorialStarted extends BotEvent {
+        private final String url, name;
+
+        TutorialStarted(String url, String name) {
+            this.url = url;
+            this.name = name;
+        }
+
+        @Override
+        protected void appendFields(StringBuilder json) {
+            field(json, "url", url);
+            field(json, "name", name);
+        }
+    }
+
+    /**
+     * All lessons of a tutorial have been handed to the downloads.
+     */
+    static final class TutorialScraped extends BotEvent {
+        private final String url;
+        private final int lessons, queued;
+        private final long millis;
+
+        TutorialScraped(String url, int lessons, int queued, long millis) {
+            this.url = url;
+            this.lessons = lessons;
+            this.queued = queued;
+            this.millis = millis;
+        }
+
+        @Override
+        protected void appendFields(StringBuilder json) {
+            field(json, "url", url);
+            field(json, "lessons", lessons);
+            field(json, "queued", queued);
+            field(json, "millis", millis);
+        }
+    }
+
+    /**
+     * The video link of a lesson is known.
+     */
+    static final class LinkResolved extends BotEvent {
+        private final String lessonID, link, method;
+        private final long millis;
+
+        /**
+         * @param method how the link was found, "page", "tab" or "listed"
+         */
+        LinkResolved(String lessonID, String link, String method, long millis) {
+            this.lessonID = lessonID;
+            this.link = link;
+            this.method = method;
+            this.millis = millis;
+        }
+
+        @Override
+        protected void appendFields(StringBuilder json) {
+            field(json, "lesson", lessonID);
+            field(json, "link", link);
+            field(json, "method", method);
+            field(json, "millis", millis);
+        }
+    }
+
+    /**
+     * The video link of a lesson could not be found.
+     */
+    static final class LinkFailed extends BotEvent {
+        private final String lessonID;
+
+        LinkFailed(String lessonID) {
+            this.lessonID = lessonID;
+        }
+
+        @Override
+        protected void appendFields(StringBuilder json) {
+            field(json, "lesson", lessonID);
+        }
+    }
+
+    /**
+     * A video has been downloaded completely.
+     */
+    static final class BytesTransferred extends BotEvent {
+        private final String file, host;
+        private final long bytes, millis;
+        private final int attempt;
+
+        BytesTransferred(String file, String host, long bytes, long millis, int attempt) {
+            this.file = file;
+            this.host = host;
+            this.bytes = bytes;
+            this.millis = millis;
+            this.attempt = attempt;
+        }
+
+        @Override
+        protected void appendFields(StringBuilder json) {
+            field(json, "file", file);
+            field(json, "host", host);
+            field(json, "bytes", bytes);
+            field(json, "millis", millis);
+            field(json, "attempt", attempt);
+        }
+    }
+
+    /**
+     * A download attempt failed.
+     */
+    static final class DownloadFailed extends BotEvent {
+        private final String file, host, reason;
+        private final int attempt;
+        private final boolean permanent;
+
+        /**
+         * @param permanent whether the download was given up on rather than scheduled for a retry
+         */
+        DownloadFailed(String file, String host, String reason, int attempt, boolean permanent) {
+            this.file = file;
+            this.host = host;
+            this.reason = reason;
+            this.attempt = attempt;
+            this.permanent = permanent;
+        }
+
+        @Override
+        protected void appendFields(StringBuilder json) {
+            field(json, "file", file);
+            field(json, "host", host);
+            field(json, "reason", reason);
+            field(json, "attempt", attempt);
+            field(json, "permanent", permanent);
+        }
+    }
+
+    /**
+     * A download was slow, stalled or failed on its first source and an alternative source is raced against it.
+     */
+    static final class HedgeStarted extends BotEvent {
+        private final String file, host, alternateHost, reason;
+
+        HedgeStarted(String file, String host, String alternateHost, String reason) {
+            this.file = file;
+            this.host = host;
+            this.alternateHost = alternateHost;
+            this.reason = reason;
+        }
+
+        @Override
+        protected void appendFields(StringBuilder json) {
+            field(json, "file", file);
+            field(json, "host", host);
+            field(json, "alternateHost", alternateHost);
+            field(json, "reason", reason);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.fenix.DTBot;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.firefox.FirefoxDriver;
+import org.openqa.selenium.firefox.FirefoxProfile;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Describes how browsers are launched. The lean profile is meant for scraping: it does not load images or web fonts and
+ * refuses connections to third party hosts such as trackers and ads. None of these are needed to read a video source
+ * off a lesson page. Pages are still loaded completely before the browser returns control, since the bot reads them
+ * right away.
+ */
+class BrowserProfile {
+
+    /**
+     * Third party hosts that are blocked by default in the lean profile. Subdomains are blocked as well.
+     */
+    static final List<String> DEFAULT_BLOCKED_HOSTS = Arrays.asList(
+            "google-analytics.com", "googletagmanager.com", "googleadservices.com", "doubleclick.net",
+            "facebook.net", "facebook.com", "twitter.com", "optimizely.com", "newrelic.com", "nr-data.net",
+            "hotjar.com", "quantserve.com", "scorecardresearch.com", "olark.com", "fonts.googleapis.com");
+
+    private final boolean lean;
+    private final List<String> blockedHosts;
+
+    /**
+     * @param lean         whether to use the lean scraping profile instead of the default one
+     * @param blockedHosts hosts the lean profile does not connect to
+     */
+    BrowserProfile(boolean lean, List<String> blockedHosts) {
+        this.lean = lean;
+        this.blockedHosts = new ArrayList<>(blockedHosts);
+    }
+
+    boolean isLean() {
+        return lean;
+    }
+
+    String getName() {
+        return lean ? "lean" : "default";
+    }
+
+    /**
+     * Launches a new browser with this profile.
+     *
+     * @return the new browser
+     */
+    WebDriver createDriver() {
+        if (!lean) {
+            return new FirefoxDriver();
+        }
+
+        FirefoxProfile profile = new FirefoxProfile();
+        // no images and no web fonts
+        profile.setPreference("permissions.default.image", 2);
+        profile.setPreference("browser.display.use_document_fonts", 0);
+        profile.setPreference("gfx.downloadable_fonts.enabled", false);
+        // route blocked hosts to a closed port through a proxy auto-config script
+        if (!blockedHosts.isEmpty()) {
+            profile.setPreference("network.proxy.type", 2);
+            profile.setPreference("network.proxy.autoconfig_url", "data:text/javascript," + encode(pacScript()));
+        }
+
+        DesiredCapabilities capabilities = DesiredCapabilities.firefox();
+        capabilities.setCapability(FirefoxDriver.PROFILE, profile);
+        return new FirefoxDriver(capabilities);
+    }
+
+    /**
+     * @return proxy auto-config script that sends blocked hosts to the discard port and everything else direct
+     */
+    String pacScript() {
+        StringBuilder script = new StringBuilder("function FindProxyForURL(url, host) {");
+        for (String blocked : blockedHosts) {
+            script.append("if (dnsDomainIs(host, '").append(blocked).append("')) return 'PROXY 127.0.0.1:9';");
+        }
+        script.append("return 'DIRECT';}");
+        return script.toString();
+    }
+
+    private static String encode(String script) {
+        try {
+            return URLEncoder.encode(script, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // UTF-8 is always supported
+        }
+    }
+}
@@ -16,11 +16,15 @@ import javafx.stage.Stage;
 import javafx.util.Callback;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 import java.util.prefs.Preferences;
 
 public class Controller implements Initializable {
@@ -32,6 +36,9 @@ public class Controller implements Initializable {
     @FXML
     private ListView<ConsoleMessage> console;
 
+    @FXML
+    private Dashboard dashboard;
+
     @FXML
     private PasswordField passField;
 
@@ -61,12 +68,59 @@ public class Controller implements Initializable {
     FileChooser fileChooser;
     private Handler handler;
     private BotService botService;
+    private DriverPool driverPool; // browsers shared by all bots for the lifetime of the application
+    private BrowserProfile browserProfile; // how the browsers of the pool are launched
+    private String coordinator; // host:port of a coordinator to lease tutorials from, null to use the queue file
+    private File recordArchive; // archive each run is recorded to, null if not recording
+    private ReplayServer replay; // serves a recorded run instead of the real site, null if not replaying
 
 
     public void setStage(Stage primaryStage) {
         this.primaryStage = primaryStage;
     }
 
+    /**
+     * Makes bots lease their tutorials from a coordinator shared with other bots instead of reading the queue file.
+     *
+     * @param coordinator address of the coordinator as <code>host:port</code>
+     */
+    public void setCoordinator(String coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * Makes bots record the pages they scrape for a later replay.
+     *
+     * @param recordArchive archive to record to, replaced by every run
+     */
+    public void setRecordArchive(File recordArchive) {
+        this.recordArchive = recordArchive;
+    }
+
+    /**
+     * Makes bots work on a recorded run instead of the real site. The queue is replaced by the recorded tutorials.
+     *
+     * @param replay started server holding the recorded run
+     * @throws IOException if the queue of the recorded run could not be written
+     */
+    public void setReplay(ReplayServer replay) throws IOException {
+        File replayQueue = File.createTempFile("replay-queue", ".txt");
+        replayQueue.deleteOnExit();
+        replay.writeQueue(replayQueue);
+        this.replay = replay;
+        queue = replayQueue;
+    }
+
+    /**
+     * Releases resources that outlive a single bot. Called when the application exits.
+     */
+    public void shutdown() {
+        driverPool.shutdown();
+        if (replay != null) {
+            replay.stop();
+        }
+    }
+
     public String getUser() {
         return userField.getText();
     }
@@ -80,11 +134,11 @@ public class Controller implements Initializable {
         if (event.getSource() == startButton) {
             // raise a new alert box if the user has forgotten to complete something
             String title = "Missing Data";
-            if (getUser().length() < 1) {
+            if (getUser().length() < 1 && replay == null) {
                 AlertBox.display(title, "Please enter a username.");
                 event.consume();
                 return;
-            } else if (getPass().length() < 1) {
+            } else if (getPass().length() < 1 && replay == null) {
                 AlertBox.display(title, "Please enter a password.");
                 event.consume();
                 return;
@@ -92,7 +146,7 @@ public class Controller implements Initializable {
                 AlertBox.display(title, "Please select an output directory.");
                 event.consume();
                 return;
-            } else if (queue == null) {
+            } else if (queue == null && coordinator == null) {
                 AlertBox.display(title, "Please select a queue file.");
                 event.consume();
                 return;
@@ -218,8 +272,14 @@ public class Controller implements Initializable {
         handler = new Handler() {
             @Override
             public void publish(LogRecord record) {
-                // add message to the console with proper log level
-                console.getItems().add(new ConsoleMessage(record.getMessage(), record.getLevel()));
+                // add message to the console with proper log level. the bot threads must not wait on the GUI
+                ConsoleMessage message = new ConsoleMessage(record.getMessage(), record.getLevel());
+                Platform.runLater(() -> {
+                    console.getItems().add(message);
+                    if (console.getItems().size() > 200) {
+                        console.getItems().remove(0);
+                    }
+                });
             }
 
             @Override
@@ -231,7 +291,38 @@ public class Controller implements Initializable {
             }
         };
 
+        try {
+            Bot.setLogLevel(Level.parse(prefs.get("logLevel", "FINEST")));
+        } catch (IllegalArgumentException e) {
+            Bot.setLogLevel(Level.FINEST);
+            handler.publish(new LogRecord(Level.WARNING, "Unknown log level: " + prefs.get("logLevel", "")));
+        }
 
+        List<String> blockedHosts = new ArrayList<>(BrowserProfile.DEFAULT_BLOCKED_HOSTS);
+        for (String host : prefs.get("blockedHosts", "").split(",")) {
+            if (!host.trim().isEmpty()) {
+                blockedHosts.add(host.trim());
+            }
+        }
+        browserProfile = new BrowserProfile(prefs.getBoolean("leanProfile", false), blockedHosts);
+        driverPool = new DriverPool(browserProfile::createDriver, prefs.getInt("driverMaxTutorials", 20));
+    }
+
+    /**
+     * Launches a browser while the user fills in the form, and logs it in if the credentials are already known. Called
+     * once the command line has been applied, since a replayed run must not touch the real site.
+     */
+    public void prewarm() {
+        if (replay != null) {
+            return; // browsers are launched when the run starts, replays need no login
+        }
+        if (getUser().length() > 0 && getPass().length() > 0) {
+            Bot loginBot = new Bot(getUser(), getPass(), null, null, handler);
+            driverPool.prewarm(getUser(), loginBot::prepareDriver);
+        } else {
+            driverPool.prewarm(null, driver -> {
+            });
+        }
     }
 
     private class ConsoleMessage {
@@ -286,7 +377,39 @@ public class Controller implements Initializable {
 
         @Override
         protected Task createTask() {
-            return new Bot(getUser(), getPass(), outputDir, queue, handler);
+            Bot bot = new Bot(getUser(), getPass(), outputDir, queue, handler);
+            bot.setDriverPool(driverPool);
+            bot.setBrowserProfile(browserProfile);
+            bot.setBulkExtraction(prefs.getBoolean("bulkExtraction", true));
+            bot.setTabCount(prefs.getInt("tabCount", 1));
+            bot.setLookahead(prefs.getInt("lookahead", 0), prefs.getBoolean("prefetchLinks", false));
+            bot.setFfmpeg(prefs.get("ffmpeg", "ffmpeg"));
+            if (coordinator != null) {
+                bot.setTutorialSource(CoordinatorClient.parse(coordinator, Logger.getLogger(Bot.class.getName())));
+            }
+            bot.setShortestJobFirst(prefs.getBoolean("shortestJobFirst", false));
+            bot.setPreflight(prefs.getBoolean("preflight", false));
+            bot.setStreamQueue(prefs.getBoolean("streamQueue", false));
+            dashboard.setBot(bot);
+            try {
+                if (recordArchive != null) {
+                    bot.setArchive(new PageArchive(recordArchive, Logger.getLogger(Bot.class.getName())));
+                }
+                if (replay != null) {
+                    bot.setReplay(replay);
+                }
+            } catch (IOException e) {
+                Logger.getLogger(Bot.class.getName())
+                        .warning("Could not set up recording or replay: " + e.getMessage());
+            }
+            // additional output directories are stored as a path list next to the main one
+            String roots = prefs.get("outputRoots", "");
+            for (String root : roots.split(File.pathSeparator)) {
+                if (!root.isEmpty()) {
+                    bot.addOutputRoot(new File(root));
+                }
+            }
+            return bot;
         }
     }
 
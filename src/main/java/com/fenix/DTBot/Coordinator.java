@@ -0,0 +1,264 @@
+package com.fenix.DTBot;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Owns the queue when several bots, possibly on different machines, work on it together. Bots lease tutorials one at
+ * a time, send heartbeats while they work on them and report them completed once all of their videos are downloaded.
+ * A tutorial whose bot stops sending heartbeats is handed out again and resumed by the next bot.
+ * <p>
+ * The protocol is line based, one request per connection:
+ * <pre>
+ * LEASE &lt;worker&gt;                -&gt; JOB &lt;job&gt; &lt;total&gt; &lt;queue line&gt; | WAIT | DONE
+ * HEARTBEAT &lt;worker&gt; &lt;job&gt;      -&gt; OK | LOST
+ * COMPLETE &lt;worker&gt; &lt;job&gt;       -&gt; OK | LOST
+ * RELEASE &lt;worker&gt; &lt;job&gt;        -&gt; OK | LOST
+ * </pre>
+ */
+class Coordinator {
+
+    static final long LEASE_TIMEOUT = 60000; // milliseconds without heartbeat before a lease is taken back
+    private static final int MAX_RELEASES = 3; // times a tutorial may be given back or expire before it is given up on
+    private static final int CLIENT_TIMEOUT = 10000; // milliseconds a bot may take to send its request
+
+    private final Logger log = Logger.getLogger(Coordinator.class.getName());
+    private final TutorialScheduler scheduler; // tutorials that are not leased
+    private final List<QueueEntry> jobs = new ArrayList<>(); // job id is the index
+    private final Map<QueueEntry, Lease> leases = new IdentityHashMap<>();
+    private final Map<Integer, Integer> releases = new HashMap<>(); // by job id, which survives resuming
+    private int done; // completed or given up tutorials
+
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor();
+    private ServerSocket server;
+
+    private static class Lease {
+        final String worker;
+        long expiry;
+
+        Lease(String worker) {
+            this.worker = worker;
+            renew();
+        }
+
+        void renew() {
+            expiry = System.currentTimeMillis() + LEASE_TIMEOUT;
+        }
+    }
+
+    /**
+     * @param queue            queue file to hand out
+     * @param shortestJobFirst see {@link TutorialScheduler}
+     * @throws IOException if the queue could not be read
+     */
+    Coordinator(File queue, boolean shortestJobFirst) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(queue))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                try {
+                    QueueEntry entry = QueueEntry.parse(line, jobs.size());
+                    if (entry != null) {
+                        jobs.add(entry);
+                    }
+                } catch (IllegalArgumentException e) {
+                    log.warning("Skipping queue line: " + line.trim() + " (" + e.getMessage() + ")");
+                }
+            }
+        }
+        scheduler = new TutorialScheduler(jobs, shortestJobFirst);
+        log.info("[*] Coordinating " + jobs.size() + " tutorials");
+    }
+
+    /**
+     * Starts accepting bots and taking back expired leases.
+     *
+     * @param port port to listen on
+     * @throws IOException if the port could not be opened
+     */
+    void start(int port) throws IOException {
+        server = new ServerSocket(port);
+        reaper.scheduleWithFixedDelay(this::reap, LEASE_TIMEOUT / 4, LEASE_TIMEOUT / 4, TimeUnit.MILLISECONDS);
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket client = server.accept();
+                    connections.submit(() -> handle(client));
+                } catch (IOException e) {
+                    // server was closed
+                }
+            }
+        }, "Coordinator");
+        acceptor.start();
+        log.info("[*] Listening on port " + server.getLocalPort());
+    }
+
+    /**
+     * Blocks until every tutorial has been completed or given up on, then stops.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IOException          if the server socket could not be closed
+     */
+    void awaitCompletion() throws InterruptedException, IOException {
+        synchronized (this) {
+            while (done < jobs.size()) {
+                wait();
+            }
+        }
+        log.info("[*] Finished URL queue");
+        server.close();
+        reaper.shutdownNow();
+        connections.shutdown();
+    }
+
+    private void handle(Socket client) {
+        try (Socket c = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(c.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(c.getOutputStream(), StandardCharsets.UTF_8))) {
+            c.setSoTimeout(CLIENT_TIMEOUT); // a stalled bot must not hold a connection thread forever
+            String request = in.readLine();
+            if (request != null) {
+                out.print(respond(request.split(" ")) + "\n");
+                out.flush();
+            }
+        } catch (IOException e) {
+            log.finest("Connection failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param request words of a request line
+     * @return response line
+     */
+    synchronized String respond(String[] request) {
+        switch (request[0]) {
+            case "LEASE":
+                if (request.length < 2) {
+                    break;
+                }
+                QueueEntry entry = scheduler.next();
+                if (entry == null) {
+                    return done < jobs.size() ? "WAIT" : "DONE";
+                }
+                leases.put(entry, new Lease(request[1]));
+                log.info("Leased to " + request[1] + ": " + entry.getURL());
+                return "JOB " + jobs.indexOf(entry) + " " + jobs.size() + " " + entry.getLine();
+
+            case "HEARTBEAT":
+            case "COMPLETE":
+            case "RELEASE":
+                if (request.length < 3) {
+                    break;
+                }
+                QueueEntry job = getJob(request[2]);
+                Lease lease = job == null ? null : leases.get(job);
+                if (lease == null || !lease.worker.equals(request[1])) {
+                    return "LOST"; // lease expired and went to another bot
+                }
+
+                if (request[0].equals("HEARTBEAT")) {
+                    lease.renew();
+                } else if (request[0].equals("COMPLETE")) {
+                    leases.remove(job);
+                    log.info("Completed by " + request[1] + ": " + job.getURL());
+                    finish();
+                } else {
+                    leases.remove(job);
+                    if (countRelease(job)) {
+                        scheduler.defer(job);
+                    }
+                }
+                return "OK";
+        }
+        return "ERROR";
+    }
+
+    private QueueEntry getJob(String id) {
+        try {
+            int index = Integer.parseInt(id);
+            return index >= 0 && index < jobs.size() ? jobs.get(index) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Counts a tutorial that was given back or whose lease expired, and gives up on it once that happened too often.
+     *
+     * @param job tutorial that is no longer leased
+     * @return {@code true} if the tutorial may be handed out again
+     */
+    private boolean countRelease(QueueEntry job) {
+        int count = releases.merge(jobs.indexOf(job), 1, Integer::sum);
+        if (count > MAX_RELEASES) {
+            log.warning("Giving up on tutorial: " + job.getURL());
+            finish();
+            return false;
+        }
+        return true;
+    }
+
+    private void finish() {
+        done++;
+        notifyAll();
+    }
+
+    /**
+     * Takes back leases of bots that stopped sending heartbeats. The tutorial is handed out again with
+     * <code>resume=true</code> so that the next bot completes the folder the previous one started, unless it has come
+     * back too often, since a tutorial that crashes every bot it is leased to would otherwise be handed out forever.
+     */
+    private void reap() {
+        reap(System.currentTimeMillis());
+    }
+
+    /**
+     * @param now time to compare the expiry of the leases against
+     */
+    synchronized void reap(long now) {
+        List<QueueEntry> expired = new ArrayList<>();
+        for (Map.Entry<QueueEntry, Lease> lease : leases.entrySet()) {
+            if (lease.getValue().expiry < now) {
+                expired.add(lease.getKey());
+            }
+        }
+        for (QueueEntry job : expired) {
+            log.warning("Lease expired for " + leases.get(job).worker + ": " + job.getURL());
+            leases.remove(job);
+            if (!countRelease(job)) {
+                continue;
+            }
+            int index = jobs.indexOf(job);
+            QueueEntry resumed = job.isResume()
+                    ? job
+                    : QueueEntry.parse(job.getLine() + " resume=true", job.getOrder());
+            jobs.set(index, resumed);
+            scheduler.add(resumed);
+        }
+    }
+
+    /**
+     * Runs a coordinator without the user interface.
+     *
+     * @param port  port to listen on
+     * @param queue queue file to hand out
+     * @throws Exception if the coordinator could not be started
+     */
+    static void run(int port, File queue) throws Exception {
+        Coordinator coordinator = new Coordinator(queue, false);
+        coordinator.start(port);
+        coordinator.awaitCompletion();
+    }
+}
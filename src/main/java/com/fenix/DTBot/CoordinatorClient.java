@@ -0,0 +1,188 @@
+package com.fenix.DTBot;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Obtains tutorials from a {@link Coordinator} instead of a local queue file. While a tutorial is held, heartbeats are
+ * sent for it in the background so that the coordinator does not hand it to another bot. Heartbeats continue until
+ * the downloads of the tutorial are done, not just until it is scraped.
+ */
+class CoordinatorClient implements TutorialSource {
+
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final long WAIT_INTERVAL = 5000; // milliseconds between lease attempts while others hold tutorials
+    private static final long HEARTBEAT_INTERVAL = Coordinator.LEASE_TIMEOUT / 4;
+
+    private final InetSocketAddress address;
+    private final String worker; // identifies this bot to the coordinator
+    private final Logger log;
+    private final Map<QueueEntry, String> held = new IdentityHashMap<>(); // leased tutorials and their job ids
+    private final ScheduledExecutorService heartbeat;
+    private volatile int size;
+
+    /**
+     * @param host host of the coordinator
+     * @param port port of the coordinator
+     * @param log  logger to report to
+     */
+    CoordinatorClient(String host, int port, Logger log) {
+        this.address = new InetSocketAddress(host, port);
+        this.worker = ManagementFactory.getRuntimeMXBean().getName(); // pid@hostname
+        this.log = log;
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Coordinator heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::sendHeartbeats, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Parses a <code>host:port</code> address.
+     *
+     * @param address address of the coordinator
+     * @param log     logger to report to
+     * @return client for the coordinator
+     * @throws IllegalArgumentException if the address could not be parsed
+     */
+    static CoordinatorClient parse(String address, Logger log) throws IllegalArgumentException {
+        int split = address.lastIndexOf(':');
+        if (split < 1) {
+            throw new IllegalArgumentException("Expected host:port but got " + address);
+        }
+        try {
+            return new CoordinatorClient(address.substring(0, split), Integer.parseInt(address.substring(split + 1)),
+                    log);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad port: " + address.substring(split + 1));
+        }
+    }
+
+    @Override
+    public QueueEntry next() throws IOException {
+        while (true) {
+            String response = request("LEASE " + worker);
+            if (response.equals("DONE")) {
+                return null;
+            }
+            if (response.startsWith("JOB ")) {
+                String[] job = response.split(" ", 4);
+                size = Integer.parseInt(job[2]);
+                QueueEntry entry = QueueEntry.parse(job[3], Integer.parseInt(job[1]));
+                synchronized (held) {
+                    held.put(entry, job[1]);
+                }
+                return entry;
+            }
+            if (!response.equals("WAIT")) {
+                throw new IOException("Unexpected response from coordinator: " + response);
+            }
+
+            // remaining tutorials are held by other bots and may come back if one of them goes away
+            try {
+                Thread.sleep(WAIT_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void defer(QueueEntry entry) {
+        report("RELEASE", entry);
+    }
+
+    @Override
+    public void completed(QueueEntry entry) {
+        report("COMPLETE", entry);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gives back every tutorial that is still held so that other bots can take over right away, and stops sending
+     * heartbeats.
+     */
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+        List<QueueEntry> remaining;
+        synchronized (held) {
+            remaining = new ArrayList<>(held.keySet());
+        }
+        for (QueueEntry entry : remaining) {
+            report("RELEASE", entry);
+        }
+    }
+
+    private void report(String command, QueueEntry entry) {
+        String job;
+        synchronized (held) {
+            job = held.remove(entry);
+        }
+        if (job == null) {
+            return;
+        }
+        try {
+            if (request(command + " " + worker + " " + job).equals("LOST")) {
+                log.warning("Coordinator had already given the tutorial to another bot: " + entry.getURL());
+            }
+        } catch (IOException e) {
+            // the lease runs out and the tutorial is resumed elsewhere
+            log.warning("Could not reach coordinator: " + e.getMessage());
+        }
+    }
+
+    private void sendHeartbeats() {
+        List<Map.Entry<QueueEntry, String>> leases;
+        synchronized (held) {
+            leases = new ArrayList<>(held.entrySet());
+        }
+        for (Map.Entry<QueueEntry, String> lease : leases) {
+            try {
+                if (request("HEARTBEAT " + worker + " " + lease.getValue()).equals("LOST")) {
+                    log.warning("Lost lease on tutorial: " + lease.getKey().getURL());
+                    synchronized (held) {
+                        held.remove(lease.getKey());
+                    }
+                }
+            } catch (IOException e) {
+                log.warning("Could not reach coordinator: " + e.getMessage());
+            }
+        }
+    }
+
+    private String request(String line) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(address, CONNECT_TIMEOUT);
+            socket.setSoTimeout(CONNECT_TIMEOUT);
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            out.print(line + "\n");
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            String response = in.readLine();
+            if (response == null) {
+                throw new IOException("Coordinator closed the connection");
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.fenix.DTBot;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.geometry.Insets;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows how the downloads of the running bot are doing: a rolling chart of the throughput, the number of active and
+ * queued downloads, the progress of every running download and how long the browser and the downloads have been busy.
+ * <p>
+ * The panel samples the bot once per {@link #SAMPLE_INTERVAL} on the application thread instead of being notified by
+ * the download threads, so drawing it never slows them down.
+ */
+public class Dashboard extends VBox {
+
+    private static final double SAMPLE_INTERVAL = 1; // seconds between samples
+    private static final int HISTORY = 120; // samples shown in the chart
+    private static final double MB = 1024 * 1024;
+
+    private final Label activeLabel = new Label();
+    private final Label queuedLabel = new Label();
+    private final Label rateLabel = new Label();
+    private final Label timeLabel = new Label();
+    private final Label boundLabel = new Label();
+    private final XYChart.Series<Number, Number> rateSeries = new XYChart.Series<>();
+    private final NumberAxis timeAxis = new NumberAxis();
+    private final ListView<String> fileList = new ListView<>();
+
+    private Bot bot; // bot being shown, null before the first start
+    private DownloadEngine.Snapshot last; // previous sample to compute the throughput from
+    private long firstSample; // time of the first sample of the current bot
+
+    public Dashboard() {
+        super(5);
+        setPadding(new Insets(5));
+
+        HBox counters = new HBox(15);
+        counters.getChildren().addAll(activeLabel, queuedLabel, rateLabel);
+        HBox times = new HBox(15);
+        times.getChildren().addAll(timeLabel, boundLabel);
+
+        timeAxis.setLabel("s");
+        timeAxis.setForceZeroInRange(false);
+        NumberAxis rateAxis = new NumberAxis();
+        rateAxis.setLabel("MB/s");
+        LineChart<Number, Number> chart = new LineChart<>(timeAxis, rateAxis);
+        chart.setAnimated(false);
+        chart.setCreateSymbols(false);
+        chart.setLegendVisible(false);
+        chart.setPrefHeight(160);
+        chart.getData().add(rateSeries);
+
+        fileList.setFocusTraversable(false);
+        fileList.setPrefHeight(120);
+
+        getChildren().addAll(counters, times, chart, fileList);
+        clear();
+
+        Timeline sampler = new Timeline(new KeyFrame(Duration.seconds(SAMPLE_INTERVAL), e -> sample()));
+        sampler.setCycleCount(Animation.INDEFINITE);
+        sampler.play();
+    }
+
+    /**
+     * Shows the given bot from now on.
+     *
+     * @param bot bot to sample
+     */
+    void setBot(Bot bot) {
+        this.bot = bot;
+        last = null;
+        firstSample = 0;
+        clear();
+    }
+
+    private void clear() {
+        rateSeries.getData().clear();
+        fileList.getItems().clear();
+        activeLabel.setText("Active: 0");
+        queuedLabel.setText("Queued: 0");
+        rateLabel.setText("0.0 MB/s");
+        timeLabel.setText("Scrape 0:00 / Download 0:00");
+        boundLabel.setText("");
+    }
+
+    /**
+     * Takes a snapshot of the bot and updates the panel with it.
+     */
+    private void sample() {
+        if (bot == null) {
+            return;
+        }
+        DownloadEngine.Snapshot snapshot = bot.sampleDownloads();
+        if (snapshot == null) {
+            return;
+        }
+        if (firstSample == 0) {
+            firstSample = snapshot.time;
+        }
+
+        double rate = 0;
+        if (last != null && snapshot.time > last.time) {
+            // restarted transfers discard their bytes, which would show as negative throughput
+            rate = Math.max(snapshot.bytes - last.bytes, 0) * 1000.0 / (snapshot.time - last.time) / MB;
+        }
+        last = snapshot;
+
+        rateSeries.getData().add(new XYChart.Data<>((snapshot.time - firstSample) / 1000.0, rate));
+        if (rateSeries.getData().size() > HISTORY) {
+            rateSeries.getData().remove(0, rateSeries.getData().size() - HISTORY);
+        }
+
+        activeLabel.setText("Active: " + snapshot.active + "/" + snapshot.threads);
+        queuedLabel.setText("Queued: " + snapshot.queued);
+        rateLabel.setText(String.format("%.1f MB/s", rate));
+        timeLabel.setText("Scrape " + formatTime(bot.getScrapeMillis()) + " / Download "
+                + formatTime(snapshot.busyMillis));
+
+        // while the browser is working, idle download threads mean the downloads are waiting on the browser
+        if (!bot.isScraping()) {
+            boundLabel.setText(snapshot.active + snapshot.queued > 0 ? "Finishing downloads" : "");
+        } else if (snapshot.queued > 0 || snapshot.active >= snapshot.threads) {
+            boundLabel.setText("Network-bound");
+        } else {
+            boundLabel.setText("Browser-bound");
+        }
+
+        List<String> rows = new ArrayList<>();
+        for (DownloadEngine.Snapshot.FileProgress file : snapshot.files) {
+            String progress = file.length > 0
+                    ? String.format("%5.1f%% of %.1f MB", file.written * 100.0 / file.length, file.length / MB)
+                    : String.format("%.1f MB", file.written / MB);
+            rows.add(file.name + "  " + progress + "  " + file.host);
+        }
+        fileList.getItems().setAll(rows);
+    }
+
+    private static String formatTime(long millis) {
+        long seconds = millis / 1000;
+        return seconds >= 3600
+                ? String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60)
+                : String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+}
@@ -0,0 +1,538 @@
+package com.fenix.DTBot;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Runs the video downloads of a bot. Downloads of all tutorials share the same threads so that transfers continue
+ * while the next tutorial is scraped. Failed downloads are not retried right away but put back after an exponential
+ * backoff with jitter, giving a throttling server time to recover. Downloads that keep failing are written to a
+ * dead-letter file that can be used as a queue on a later run.
+ * <p>
+ * Downloads are counted per tutorial so that a tutorial can be reported finished once its last download is done.
+ * <p>
+ * Video links point at different CDNs that throttle differently, so waiting downloads are grouped by host. Every host
+ * has its own connection limit, which is halved whenever a transfer from it fails and raised again one by one as
+ * transfers succeed, and is paused after a failure. Free threads are given to the host with the fewest active
+ * transfers, so a throttled host does not hold up downloads from a healthy one.
+ */
+class DownloadEngine {
+
+    static final int MAX_ATTEMPTS = 6; // attempts before a download goes to the dead-letter file
+    private static final long BASE_BACKOFF = 2000; // milliseconds before the first retry
+    private static final long MAX_BACKOFF = 5 * 60 * 1000;
+    private static final double THROUGHPUT_WEIGHT = 0.2; // weight of the latest transfer in the moving average
+    private static final int MAX_CONNECTIONS_PER_HOST = 3;
+
+    private final OutputRoots outputRoots;
+    private final File deadLetterFile; // receives downloads that failed for good, null to only log them
+    private final EventLog events;
+    private final Logger log;
+    private final int threads; // concurrent downloads over all hosts
+    private final ExecutorService pool; // runs downloads
+    private final ScheduledExecutorService timer; // puts retries back and wakes paused hosts
+    private final ExecutorService hedgePool; // streams the sources of hedged downloads
+    private final ExecutorService segmentPool; // fetches the segments of streamed videos
+    private final Random random = new Random();
+    private PageArchive archive; // records the headers of every video, null if not recording
+    private volatile String ffmpeg; // remuxes streamed videos, null if not available
+
+    private final Map<String, Host> hosts = new LinkedHashMap<>();
+    private int running; // downloads currently transferring
+    private final Set<DownloadTask> active = new LinkedHashSet<>(); // the running downloads
+    private long busySince; // when running last rose above 0
+    private long busyMillis; // time with at least one download running, up to busySince
+    private long nextWake; // when a paused host is looked at again, 0 if not scheduled
+
+    private int outstanding; // downloads submitted or waiting for a retry that have not finished yet
+    private final Map<String, Integer> outstandingByTutorial = new HashMap<>();
+    private final Map<String, Runnable> whenDone = new HashMap<>(); // run once a tutorial has no outstanding downloads
+    private double throughput; // moving average of bytes per second, 0 until the first transfer completes
+    private long transferred; // bytes of all completed transfers
+    private int transfers; // completed transfers
+    private long firstSubmit; // when the first download was submitted, 0 before
+
+    /**
+     * Downloads waiting for and running against a single host.
+     */
+    private static class Host {
+        final Deque<DownloadTask> waiting = new ArrayDeque<>();
+        int active; // transfers currently running
+        int limit = MAX_CONNECTIONS_PER_HOST; // lowered on failures, raised again on successes
+        int failures; // consecutive failed transfers
+        long pausedUntil; // no new transfers start before this
+    }
+
+    /**
+     * @param threads        number of concurrent downloads
+     * @param outputRoots    keeps track of free space on the output roots
+     * @param deadLetterFile receives downloads that failed for good, {@code null} to only log them
+     * @param events         receives an event for every transfer and failure
+     * @param log            logger to report to
+     */
+    DownloadEngine(int threads, OutputRoots outputRoots, File deadLetterFile, EventLog events, Logger log) {
+        this.outputRoots = outputRoots;
+        this.deadLetterFile = deadLetterFile;
+        this.events = events;
+        this.log = log;
+        this.threads = threads;
+        pool = Executors.newFixedThreadPool(threads);
+        timer = Executors.newSingleThreadScheduledExecutor();
+        hedgePool = Executors.newCachedThreadPool();
+        segmentPool = Executors.newFixedThreadPool(threads * 2); // host limits keep most of them idle
+    }
+
+    OutputRoots getOutputRoots() {
+        return outputRoots;
+    }
+
+    Logger getLog() {
+        return log;
+    }
+
+    EventLog getEvents() {
+        return events;
+    }
+
+    PageArchive getArchive() {
+        return archive;
+    }
+
+    void setArchive(PageArchive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * @return threads for the sources of hedged downloads, which are watched by a download thread
+     */
+    ExecutorService getHedgePool() {
+        return hedgePool;
+    }
+
+    /**
+     * @return threads for the segments of streamed videos, which are written out by a download thread
+     */
+    ExecutorService getSegmentPool() {
+        return segmentPool;
+    }
+
+    /**
+     * Sets the ffmpeg used to remux streamed videos after checking that it runs. Called before any download is
+     * submitted, the check takes a moment and is done without holding the engine.
+     *
+     * @param ffmpeg command that runs ffmpeg, {@code null} to never remux streamed videos
+     */
+    void setFfmpeg(String ffmpeg) {
+        if (ffmpeg != null) {
+            try {
+                Process process = new ProcessBuilder(ffmpeg, "-version").redirectErrorStream(true).start();
+                try (InputStream out = process.getInputStream()) {
+                    while (out.read(new byte[1024]) != -1) {
+                        // the version is of no interest
+                    }
+                }
+                if (!process.waitFor(10, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                    process.destroy();
+                    throw new IOException("ffmpeg -version failed");
+                }
+            } catch (IOException e) {
+                log.warning("Could not run ffmpeg, streamed videos are not remuxed: " + e.getMessage());
+                ffmpeg = null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ffmpeg = null;
+            }
+        }
+        this.ffmpeg = ffmpeg;
+    }
+
+    /**
+     * @return command that runs ffmpeg, or {@code null} if it is not available
+     */
+    String getFfmpeg() {
+        return ffmpeg;
+    }
+
+    /**
+     * Takes another connection to a host for a running download, e.g. to fetch the segments of a stream in parallel.
+     * Extra connections count against the same limit as the downloads of the host.
+     *
+     * @param name host to connect to
+     * @return {@code true} if the connection may be opened, it must be reported with
+     * {@link #reportConnection(String, boolean, boolean)}
+     */
+    synchronized boolean acquireConnection(String name) {
+        Host host = hosts.computeIfAbsent(name, h -> new Host());
+        if (host.active >= host.limit || host.pausedUntil > System.currentTimeMillis()) {
+            return false;
+        }
+        host.active++;
+        return true;
+    }
+
+    /**
+     * Reports the outcome of a request a running download made besides its own transfer, so that failing segments
+     * slow down their host like failing downloads do.
+     *
+     * @param name    host of the request
+     * @param held    whether the request used a connection taken by {@link #acquireConnection(String)}, which is freed
+     * @param success whether the request went through
+     */
+    synchronized void reportConnection(String name, boolean held, boolean success) {
+        Host host = hosts.computeIfAbsent(name, h -> new Host());
+        if (held) {
+            host.active--;
+        }
+        adjustLimit(name, host, success);
+        dispatch();
+    }
+
+    /**
+     * Queues a download.
+     *
+     * @param task download to run
+     */
+    synchronized void submit(DownloadTask task) {
+        if (firstSubmit == 0) {
+            firstSubmit = System.currentTimeMillis();
+        }
+        outstanding++;
+        outstandingByTutorial.merge(task.getTutorialURL(), 1, Integer::sum);
+        enqueue(task);
+    }
+
+    /**
+     * Called by a task once it is done, successful or refused for lack of space.
+     *
+     * @param task finished download
+     */
+    void finished(DownloadTask task) {
+        release(task, true);
+        complete(task);
+    }
+
+    /**
+     * Removes a task that will not be attempted again from the outstanding downloads.
+     */
+    private void complete(DownloadTask task) {
+        Runnable callback = null;
+        synchronized (this) {
+            String tutorial = task.getTutorialURL();
+            if (outstandingByTutorial.merge(tutorial, -1, Integer::sum) == 0) {
+                outstandingByTutorial.remove(tutorial);
+                callback = whenDone.remove(tutorial);
+            }
+        }
+        // the callback counts as part of the download so that awaitCompletion() waits for it
+        if (callback != null) {
+            callback.run();
+        }
+        synchronized (this) {
+            outstanding--;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Runs an action once every download of a tutorial submitted so far is done, right away if there are none.
+     *
+     * @param tutorialURL tutorial to wait for
+     * @param callback    action to run on the thread that finished the last download
+     */
+    void whenDone(String tutorialURL, Runnable callback) {
+        synchronized (this) {
+            if (outstandingByTutorial.containsKey(tutorialURL)) {
+                whenDone.put(tutorialURL, callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * Called by a task whose transfer failed. The task is either scheduled for another attempt or written to the
+     * dead-letter file.
+     *
+     * @param task  failed download
+     * @param cause why it failed
+     */
+    void failed(DownloadTask task, Exception cause) {
+        release(task, false);
+        boolean permanent = task.getAttempt() + 1 >= MAX_ATTEMPTS;
+        events.post(new BotEvent.DownloadFailed(task.getFile().getName(), task.getHost(), cause.toString(),
+                task.getAttempt(), permanent));
+        if (permanent) {
+            log.warning("Could not download video: " + task.getFile().getName());
+            writeDeadLetter(task, cause);
+            complete(task);
+            return;
+        }
+
+        long delay = getBackoff(task.getAttempt());
+        log.warning(String.format("Retrying video download in %d s: %s", delay / 1000, task.getFile().getName()));
+
+        task.nextAttempt();
+        timer.schedule(() -> requeue(task), delay, TimeUnit.MILLISECONDS); // still outstanding
+    }
+
+    /**
+     * Full backoff doubles with every failure, the actual delay is drawn from its upper half.
+     *
+     * @param failures number of failures so far, minus one
+     * @return delay in milliseconds
+     */
+    long getBackoff(int failures) {
+        long backoff = Math.min(BASE_BACKOFF << Math.min(failures, 20), MAX_BACKOFF);
+        return backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+    }
+
+    private synchronized void requeue(DownloadTask task) {
+        enqueue(task);
+    }
+
+    private void enqueue(DownloadTask task) {
+        hosts.computeIfAbsent(task.getHost(), host -> new Host()).waiting.add(task);
+        dispatch();
+    }
+
+    /**
+     * Frees the slot of a task that stopped transferring and adjusts the limits of its host.
+     *
+     * @param task    task that stopped
+     * @param success whether the transfer went through
+     */
+    private synchronized void release(DownloadTask task, boolean success) {
+        Host host = hosts.get(task.getHost());
+        host.active--;
+        running--;
+        active.remove(task);
+        if (running == 0) {
+            busyMillis += System.currentTimeMillis() - busySince;
+        }
+        adjustLimit(task.getHost(), host, success);
+        dispatch();
+    }
+
+    /**
+     * Raises the connection limit of a host after a success, halves it and pauses the host after a failure.
+     */
+    private void adjustLimit(String name, Host host, boolean success) {
+        if (success) {
+            host.failures = 0;
+            host.limit = Math.min(host.limit + 1, MAX_CONNECTIONS_PER_HOST);
+        } else {
+            long pause = getBackoff(host.failures++);
+            host.limit = Math.max(host.limit / 2, 1);
+            host.pausedUntil = Math.max(host.pausedUntil, System.currentTimeMillis() + pause);
+            log.finer(() -> String.format("Pausing %s for %d s, %d connections allowed", name, pause / 1000,
+                    host.limit));
+        }
+    }
+
+    /**
+     * Starts waiting downloads while there are free threads, each time from the least loaded host that is neither
+     * paused nor at its limit. Ties go to the host with more waiting downloads.
+     */
+    private void dispatch() {
+        long now = System.currentTimeMillis();
+        while (running < threads) {
+            Host best = null;
+            for (Host host : hosts.values()) {
+                if (host.waiting.isEmpty() || host.active >= host.limit || host.pausedUntil > now) {
+                    continue;
+                }
+                if (best == null || host.active < best.active
+                        || host.active == best.active && host.waiting.size() > best.waiting.size()) {
+                    best = host;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            if (running == 0) {
+                busySince = now;
+            }
+            best.active++;
+            running++;
+            DownloadTask task = best.waiting.poll();
+            active.add(task);
+            pool.execute(task);
+        }
+
+        // look at paused hosts again once their pause is over
+        long wake = Long.MAX_VALUE;
+        for (Host host : hosts.values()) {
+            if (!host.waiting.isEmpty() && host.pausedUntil > now) {
+                wake = Math.min(wake, host.pausedUntil);
+            }
+        }
+        if (wake != Long.MAX_VALUE && (nextWake == 0 || wake < nextWake)) {
+            nextWake = wake;
+            timer.schedule(this::wake, wake - now, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void wake() {
+        nextWake = 0;
+        dispatch();
+    }
+
+    /**
+     * Records a completed transfer to keep track of the throughput.
+     *
+     * @param bytes  size of the transfer
+     * @param millis duration of the transfer
+     */
+    synchronized void recordTransfer(long bytes, long millis) {
+        transferred += bytes;
+        transfers++;
+        double latest = bytes * 1000.0 / Math.max(millis, 1);
+        throughput = throughput == 0 ? latest : THROUGHPUT_WEIGHT * latest + (1 - THROUGHPUT_WEIGHT) * throughput;
+    }
+
+    /**
+     * @return moving average of the throughput of a single download in bytes per second, 0 if unknown
+     */
+    synchronized double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * @return bytes of all completed transfers
+     */
+    synchronized long getTransferred() {
+        return transferred;
+    }
+
+    /**
+     * @return average size of a completed transfer in bytes, 0 before the first one
+     */
+    synchronized long getAverageTransfer() {
+        return transfers == 0 ? 0 : transferred / transfers;
+    }
+
+    /**
+     * @return bytes per second over all downloads since the first one was submitted, 0 if unknown
+     */
+    synchronized double getAggregateThroughput() {
+        if (firstSubmit == 0 || transferred == 0) {
+            return 0;
+        }
+        return transferred * 1000.0 / Math.max(System.currentTimeMillis() - firstSubmit, 1);
+    }
+
+    /**
+     * Takes a consistent copy of the counters for display. Meant to be called at a low fixed rate, it holds the lock
+     * of the engine only as long as it takes to copy them.
+     *
+     * @return current state of the engine
+     */
+    synchronized Snapshot snapshot() {
+        long now = System.currentTimeMillis();
+        long bytes = transferred;
+        List<Snapshot.FileProgress> files = new ArrayList<>();
+        for (DownloadTask task : active) {
+            bytes += task.getWritten();
+            files.add(new Snapshot.FileProgress(task.getFile().getName(), task.getHost(), task.getWritten(),
+                    task.getLength()));
+        }
+        return new Snapshot(now, threads, running, outstanding - running, bytes,
+                busyMillis + (running > 0 ? now - busySince : 0), files);
+    }
+
+    /**
+     * State of the engine at one point in time.
+     */
+    static class Snapshot {
+        final long time; // when the snapshot was taken
+        final int threads; // concurrent downloads allowed
+        final int active; // downloads transferring
+        final int queued; // downloads waiting for a thread, their host or a retry
+        final long bytes; // bytes transferred, including those of running downloads
+        final long busyMillis; // time with at least one download running
+        final List<FileProgress> files; // the running downloads
+
+        Snapshot(long time, int threads, int active, int queued, long bytes, long busyMillis,
+                 List<FileProgress> files) {
+            this.time = time;
+            this.threads = threads;
+            this.active = active;
+            this.queued = queued;
+            this.bytes = bytes;
+            this.busyMillis = busyMillis;
+            this.files = Collections.unmodifiableList(files);
+        }
+
+        /**
+         * Progress of a running download.
+         */
+        static class FileProgress {
+            final String name;
+            final String host;
+            final long written;
+            final long length; // -1 if unknown
+
+            FileProgress(String name, String host, long written, long length) {
+                this.name = name;
+                this.host = host;
+                this.written = written;
+                this.length = length;
+            }
+        }
+    }
+
+    /**
+     * Waits until every download has either completed or been written to the dead-letter file, then stops the
+     * threads.
+     *
+     * @throws InterruptedException if interrupted while waiting, in which case remaining downloads are abandoned
+     */
+    void awaitCompletion() throws InterruptedException {
+        try {
+            synchronized (this) {
+                while (outstanding > 0) {
+                    wait();
+                }
+            }
+        } finally {
+            timer.shutdownNow();
+            pool.shutdownNow();
+            hedgePool.shutdownNow();
+            segmentPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Appends the failed download to the dead-letter file as a queue line that only downloads the failed lesson.
+     */
+    private synchronized void writeDeadLetter(DownloadTask task, Exception cause) {
+        if (deadLetterFile == null) {
+            return;
+        }
+        try (PrintWriter out = new PrintWriter(new FileWriter(deadLetterFile, true))) {
+            out.println("# " + task.getFile().getName() + " (" + cause.getMessage() + ")");
+            out.println(task.getTutorialURL() + " lessons=" + task.getLesson().getID());
+        } catch (IOException e) {
+            log.warning("Could not write to " + deadLetterFile.getName() + ": " + e.getMessage());
+        }
+    }
+}
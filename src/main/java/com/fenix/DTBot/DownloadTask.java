@@ -0,0 +1,467 @@
+package com.fenix.DTBot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A runnable task that represents a single video download. This class is instantiated whenever a new background
+ * thread to download a video is required and is part of a larger system of concurrent downloads, see
+ * {@link DownloadEngine}.
+ * <p>
+ * Before any bytes are transferred, the size announced by the server is reserved on the output root, out of the space
+ * the tutorial holds there if it was measured or estimated. Downloads that would not fit are refused outright instead
+ * of failing halfway through, and the file is preallocated to its final length so that it is written in place. The
+ * video is written under a <code>.part</code> name and only renamed once it is complete, so a bot that is killed
+ * mid-transfer never leaves a file that looks finished.
+ * <p>
+ * Every retry gets more generous timeouts. Once the throughput of earlier downloads is known, a transfer that takes
+ * far longer than its size suggests is aborted as well.
+ * <p>
+ * Lessons that offer alternative sources are downloaded hedged: if the first source turns out slow, stalls or fails,
+ * an alternative is streamed next to it and whichever finishes first is kept.
+ * <p>
+ * Links to HLS playlists and DASH manifests are downloaded segment by segment, see {@link StreamDownload}.
+ */
+class DownloadTask implements Runnable {
+
+    private static final int BASE_TIMEOUT = 1000; // connect and read timeout of the first attempt in milliseconds
+    private static final int MAX_TIMEOUT = 30000;
+    private static final long MIN_DEADLINE = 60000; // transfers are never aborted for slowness before this
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long HEDGE_GRACE = 5000; // milliseconds before a source is judged
+    private static final long STALL_TIME = 8000; // milliseconds without bytes after which a source counts as stalled
+    private static final double HEDGE_FRACTION = 0.25; // of the usual throughput below which a source is slow
+    private static final double MIN_HEDGE_RATE = 64 * 1024; // bytes per second, used until the throughput is known
+    private static final long HEDGE_POLL_INTERVAL = 250;
+
+    private final DownloadEngine engine; // runs this task and handles its failures
+    private final LessonInfo lesson; // lesson the video belongs to
+    private final String tutorialURL; // tutorial the lesson belongs to
+    private final URL link; // source to download from
+    private final File file; // file to do download too
+    private final File root; // output root the file is located on
+    private int attempt; // number of failed attempts so far
+    private volatile long length = -1; // size announced by the server, -1 if unknown
+    private volatile long written; // bytes of the current attempt written so far
+
+    /**
+     * @param engine      runs this task and handles its failures
+     * @param lesson      lesson with a resolved video link
+     * @param tutorialURL tutorial the lesson belongs to
+     * @param file        file to download to
+     * @param root        output root the file is located on
+     * @throws MalformedURLException if the video link of the lesson is not a URL
+     */
+    DownloadTask(DownloadEngine engine, LessonInfo lesson, String tutorialURL, File file, File root)
+            throws MalformedURLException {
+        this.engine = engine;
+        this.lesson = lesson;
+        this.tutorialURL = tutorialURL;
+        this.link = new URL(lesson.getLink());
+        this.file = file;
+        this.root = root;
+    }
+
+    LessonInfo getLesson() {
+        return lesson;
+    }
+
+    String getTutorialURL() {
+        return tutorialURL;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    String getHost() {
+        return link.getHost();
+    }
+
+    int getAttempt() {
+        return attempt;
+    }
+
+    void nextAttempt() {
+        attempt++;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    long getWritten() {
+        return written;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (transfer()) {
+                engine.finished(this);
+            } else {
+                // retried like any other failure, space may be freed by then, and dead-lettered in the end
+                engine.failed(this, new IOException("Not enough space for video"));
+            }
+        } catch (Exception e) {
+            engine.failed(this, e);
+        }
+    }
+
+    /**
+     * Downloads the video into its file.
+     *
+     * @return {@code true} if the video was downloaded; {@code false} if it was refused for lack of space
+     * @throws IOException if the transfer failed, in which case the partial file is removed
+     */
+    private boolean transfer() throws IOException {
+        int timeout = Math.min(BASE_TIMEOUT << attempt, MAX_TIMEOUT);
+        if (StreamDownload.isStream(link)) {
+            return transferStream(timeout);
+        }
+        HttpURLConnection connection = open(link, timeout);
+
+        try {
+            long length = connection.getContentLengthLong(); // -1 if the server does not tell
+            if (engine.getArchive() != null) {
+                engine.getArchive().recordMedia(link.toString(), connection);
+            }
+            this.length = length;
+            this.written = 0;
+            OutputRoots roots = engine.getOutputRoots();
+            if (!roots.reserve(root, length, tutorialURL)) {
+                return false;
+            }
+
+            long start = System.currentTimeMillis();
+            long deadline = start + getAllowedTime(length);
+            try {
+                Source primary = new Source(link, new File(file.getPath() + ".part"), timeout);
+                primary.connection = connection;
+                primary.length = length;
+                Source winner = lesson.getAlternates().isEmpty() ? primary.copy(deadline) : race(primary, deadline);
+                moveIntoPlace(winner.partial, file);
+                long millis = System.currentTimeMillis() - start;
+                engine.recordTransfer(winner.written, millis);
+                engine.getEvents().post(new BotEvent.BytesTransferred(file.getName(), winner.url.getHost(),
+                        winner.written, millis, attempt));
+            } finally {
+                roots.release(root, length);
+            }
+            return true;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Downloads a video that is served as an adaptive stream. Its size is not known before all segments are in, so no
+     * space is reserved for it, and its segments are fetched over several connections instead of being hedged.
+     *
+     * @param timeout connect and read timeout of every request in milliseconds
+     * @return {@code true} if the video was downloaded; {@code false} if it was refused for lack of space
+     * @throws IOException if the transfer failed, in which case the partial file is removed
+     */
+    private boolean transferStream(int timeout) throws IOException {
+        StreamDownload stream = new StreamDownload(engine, link, timeout);
+        stream.load();
+        engine.getLog().finest(() -> "Streaming " + stream.describe() + ": " + file.getName());
+        this.length = -1;
+        this.written = 0;
+        OutputRoots roots = engine.getOutputRoots();
+        if (!roots.reserve(root, -1)) {
+            return false;
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            File partial = new File(file.getPath() + ".part");
+            long bytes = stream.download(file, partial, start + getAllowedTime(-1), written -> this.written = written);
+            File target = stream.getTarget(file);
+            if (target != file) {
+                engine.getLog().warning("No ffmpeg to remux the transport stream, saving it as " + target.getName());
+            }
+            moveIntoPlace(partial, target);
+            long millis = System.currentTimeMillis() - start;
+            engine.recordTransfer(bytes, millis);
+            engine.getEvents().post(new BotEvent.BytesTransferred(file.getName(), getHost(), bytes, millis, attempt));
+        } finally {
+            roots.release(root, -1);
+        }
+        return true;
+    }
+
+    /**
+     * Gives a complete partial file the name of the video.
+     *
+     * @param partial complete partial file
+     * @param target  name of the video, usually {@link #file}
+     * @throws IOException if it could not be renamed, in which case it is removed
+     */
+    private static void moveIntoPlace(File partial, File target) throws IOException {
+        if (!partial.renameTo(target)) {
+            //noinspection ResultOfMethodCallIgnored
+            partial.delete();
+            throw new IOException("Could not rename " + partial.getName());
+        }
+    }
+
+    static HttpURLConnection open(URL url, int timeout) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        return connection;
+    }
+
+    /**
+     * Streams the primary source and, once it turns out slow or stalls, an alternative source of the same video next
+     * to it. Whichever finishes first is kept. The other one is cancelled and its partial file removed.
+     *
+     * @param primary  source that is already connected
+     * @param deadline when the transfer is given up on
+     * @return the source that completed
+     * @throws IOException if no source completed
+     */
+    private Source race(Source primary, long deadline) throws IOException {
+        ExecutorService hedges = engine.getHedgePool();
+        long start = System.currentTimeMillis();
+        Future<Source> first = hedges.submit(() -> primary.copy(deadline));
+        Source alternate = null;
+        Future<Source> second = null;
+
+        try {
+            while (true) {
+                Source winner = getIfDone(first);
+                if (winner == null && second != null) {
+                    winner = getIfDone(second);
+                }
+                if (winner != null) {
+                    if (second != null) {
+                        boolean primaryWon = winner == primary;
+                        discard(primaryWon ? alternate : primary, primaryWon ? second : first);
+                        engine.getLog().finer(() -> "Kept " + (primaryWon ? "primary" : "alternative") + " source: "
+                                + file.getName());
+                    }
+                    return winner;
+                }
+
+                boolean primaryFailed = first.isDone();
+                if (primaryFailed && (second == null ? lesson.getAlternates().isEmpty() : second.isDone())) {
+                    return getResult(first); // throws the failure of the primary source
+                }
+
+                if (second == null) {
+                    String reason = primaryFailed ? "failed" : getHedgeReason(primary, start);
+                    if (reason != null) {
+                        URL url = new URL(lesson.getAlternates().get(0));
+                        alternate = new Source(url, new File(file.getPath() + ".alt.part"),
+                                Math.min(BASE_TIMEOUT << attempt, MAX_TIMEOUT));
+                        Source hedge = alternate;
+                        second = hedges.submit(() -> hedge.reserveAndCopy(deadline));
+                        engine.getLog().finer(() -> "Primary source " + reason + ", racing alternative: "
+                                + file.getName());
+                        engine.getEvents().post(new BotEvent.HedgeStarted(file.getName(), getHost(), url.getHost(),
+                                reason));
+                    }
+                }
+
+                Thread.sleep(HEDGE_POLL_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            primary.cancel();
+            if (alternate != null) {
+                alternate.cancel();
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        }
+    }
+
+    /**
+     * Cancels the source that lost the race and makes sure its partial file is gone, even if it completed just before
+     * it was cancelled.
+     */
+    private static void discard(Source loser, Future<Source> future) {
+        loser.cancel(); // a cancelled transfer removes its own partial file
+        try {
+            future.get(MAX_TIMEOUT, TimeUnit.MILLISECONDS);
+            //noinspection ResultOfMethodCallIgnored
+            loser.partial.delete();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // failed as expected
+        }
+    }
+
+    /**
+     * Decides whether a source is slow enough to race an alternative against it.
+     *
+     * @param source source being streamed
+     * @param start  when streaming started
+     * @return why the source should be hedged, or {@code null} if it is doing fine
+     */
+    private String getHedgeReason(Source source, long start) {
+        long now = System.currentTimeMillis();
+        if (now - start < HEDGE_GRACE) {
+            return null; // connections take a moment to reach their speed
+        }
+        if (now - source.lastProgress > STALL_TIME) {
+            return "stalled";
+        }
+        double throughput = engine.getThroughput();
+        double threshold = throughput > 0 ? throughput * HEDGE_FRACTION : MIN_HEDGE_RATE;
+        return source.written * 1000.0 / (now - start) < threshold ? "slow" : null;
+    }
+
+    /**
+     * @return result of the future if it completed successfully, otherwise {@code null}
+     */
+    private static Source getIfDone(Future<Source> future) {
+        if (!future.isDone()) {
+            return null;
+        }
+        try {
+            return getResult(future);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Source getResult(Future<Source> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * One source of the video being streamed into its own partial file.
+     */
+    private class Source {
+        final URL url;
+        final File partial;
+        final int timeout;
+        volatile HttpURLConnection connection; // null until connected
+        long length = -1; // size announced by the server, -1 if unknown
+        volatile long written; // bytes written so far
+        volatile long lastProgress = System.currentTimeMillis(); // when bytes last arrived
+        private volatile boolean cancelled;
+
+        Source(URL url, File partial, int timeout) {
+            this.url = url;
+            this.partial = partial;
+            this.timeout = timeout;
+        }
+
+        /**
+         * Connects, reserves room for the video and streams it. Used for alternative sources, which need room of
+         * their own while they race the primary one.
+         */
+        Source reserveAndCopy(long deadline) throws IOException {
+            connection = open(url, timeout);
+            try {
+                length = connection.getContentLengthLong();
+                OutputRoots roots = engine.getOutputRoots();
+                if (!roots.reserve(root, length)) {
+                    throw new IOException("Not enough space for alternative source");
+                }
+                try {
+                    return copy(deadline);
+                } finally {
+                    roots.release(root, length);
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        /**
+         * Streams the connected source into its partial file.
+         *
+         * @param deadline when the transfer is given up on
+         * @return this source, with the complete video in its partial file
+         * @throws IOException if the transfer failed or was cancelled, in which case the partial file is removed
+         */
+        Source copy(long deadline) throws IOException {
+            try (InputStream in = connection.getInputStream();
+                 RandomAccessFile out = new RandomAccessFile(partial, "rw")) {
+                if (length >= 0) {
+                    out.setLength(length); // preallocate
+                }
+
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long written = 0;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    written += read;
+                    this.written = written;
+                    DownloadTask.this.written = Math.max(DownloadTask.this.written, written); // for display only
+                    lastProgress = System.currentTimeMillis();
+                    if (cancelled) {
+                        throw new IOException("Cancelled");
+                    }
+                    if (lastProgress > deadline) {
+                        throw new IOException("Transfer too slow");
+                    }
+                }
+                if (cancelled) {
+                    throw new IOException("Cancelled");
+                }
+                if (length >= 0 && written != length) {
+                    throw new IOException("Expected " + length + " bytes but got " + written);
+                }
+                out.setLength(written); // trims the file if the length was unknown
+                return this;
+            } catch (IOException e) {
+                //noinspection ResultOfMethodCallIgnored
+                partial.delete();
+                throw e;
+            }
+        }
+
+        /**
+         * Stops the transfer. A read that is blocked on the network is interrupted by closing the connection.
+         */
+        void cancel() {
+            cancelled = true;
+            HttpURLConnection current = connection;
+            if (current != null) {
+                current.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Estimates how long the transfer may take based on its size and the throughput of earlier downloads. Each retry
+     * doubles the allowance.
+     *
+     * @param length size of the video, or a negative number if unknown
+     * @return allowed duration in milliseconds
+     */
+    private long getAllowedTime(long length) {
+        double throughput = engine.getThroughput();
+        if (length < 0 || throughput == 0) {
+            return Long.MAX_VALUE / 2; // nothing to base an estimate on
+        }
+        long expected = (long) (length * 1000 / throughput);
+        return Math.max(MIN_DEADLINE, expected * (4L << attempt));
+    }
+}
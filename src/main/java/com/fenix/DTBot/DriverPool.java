@@ -0,0 +1,210 @@
+package com.fenix.DTBot;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Keeps browsers alive for the whole lifetime of the application so that restarting the bot does not pay for browser
+ * startup and login again. A browser can be warmed up in the background while the user is still filling in the form.
+ * Browsers are health checked before they are handed out and replaced after serving a number of tutorials to bound
+ * their memory growth.
+ * <p>
+ * The lock of the pool only guards its bookkeeping. Browsers are checked and quit outside of it, so a browser that
+ * hangs holds up only the thread talking to it.
+ */
+class DriverPool {
+
+    private final Supplier<WebDriver> factory; // launches new browsers
+    private final int maxTutorials; // tutorials a browser may serve before it is replaced
+    private final Logger log = Logger.getLogger(DriverPool.class.getName());
+
+    private final Deque<WebDriver> idle = new ArrayDeque<>(); // healthy browsers waiting to be handed out
+    private final List<WebDriver> all = new ArrayList<>(); // every browser that has not been quit yet
+    private final Map<WebDriver, String> loggedInAs = new HashMap<>(); // user each browser is logged in as
+    private final Map<WebDriver, Integer> tutorialsServed = new HashMap<>();
+
+    private final ExecutorService warmer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "DriverPool warmer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> warming; // browser currently being warmed up, if any
+    private boolean shutdown;
+
+    /**
+     * @param factory      launches new browsers
+     * @param maxTutorials tutorials a browser may serve before it is replaced
+     */
+    DriverPool(Supplier<WebDriver> factory, int maxTutorials) {
+        this.factory = factory;
+        this.maxTutorials = maxTutorials;
+    }
+
+    /**
+     * Launches a browser in the background unless one is already waiting or being launched.
+     *
+     * @param user        user the preparation logs the browser in as, or {@code null} if it does not log in
+     * @param preparation work to do on the new browser before it is handed out, e.g. logging in
+     */
+    synchronized void prewarm(String user, Consumer<WebDriver> preparation) {
+        if (shutdown || !idle.isEmpty() || warming != null && !warming.isDone()) {
+            return;
+        }
+        warming = warmer.submit(() -> {
+            WebDriver driver = launch();
+            try {
+                preparation.accept(driver);
+                synchronized (this) {
+                    loggedInAs.put(driver, user);
+                }
+            } catch (WebDriverException e) {
+                log.warning("Could not prepare browser: " + e.getMessage());
+            }
+            release(driver);
+        });
+    }
+
+    /**
+     * Hands out a healthy browser, waiting for one that is being warmed up or launching a new one if none is idle.
+     *
+     * @return browser that is exclusively owned by the caller until it is released
+     */
+    WebDriver acquire() {
+        Future<?> pending;
+        synchronized (this) {
+            pending = warming;
+        }
+        if (pending != null) {
+            try {
+                pending.get(); // a browser that is half way through startup beats starting a new one
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.warning("Could not warm up browser: " + e.getCause().getMessage());
+            }
+        }
+
+        while (true) {
+            WebDriver driver;
+            synchronized (this) {
+                driver = idle.poll();
+            }
+            if (driver == null) {
+                return launch();
+            }
+            if (isHealthy(driver)) {
+                return driver;
+            }
+            log.warning("Discarding unresponsive browser");
+            discard(driver);
+        }
+    }
+
+    /**
+     * Returns a browser to the pool once the caller is done with it.
+     *
+     * @param driver browser obtained from {@link #acquire()}
+     */
+    void release(WebDriver driver) {
+        boolean keep = !isWornOut(driver) && isHealthy(driver);
+        synchronized (this) {
+            if (keep && !shutdown) {
+                idle.push(driver);
+                return;
+            }
+        }
+        discard(driver);
+    }
+
+    /**
+     * Records that a browser has finished another tutorial.
+     *
+     * @param driver browser that served the tutorial
+     */
+    synchronized void recordTutorial(WebDriver driver) {
+        tutorialsServed.merge(driver, 1, Integer::sum);
+    }
+
+    /**
+     * @param driver browser obtained from {@link #acquire()}
+     * @return {@code true} if the browser has served enough tutorials to be replaced
+     */
+    synchronized boolean isWornOut(WebDriver driver) {
+        return tutorialsServed.getOrDefault(driver, 0) >= maxTutorials;
+    }
+
+    /**
+     * @param driver browser obtained from {@link #acquire()}
+     * @param user   login string to check for
+     * @return {@code true} if the browser has been logged in as the user
+     */
+    synchronized boolean isLoggedIn(WebDriver driver, String user) {
+        return user != null && user.equals(loggedInAs.get(driver));
+    }
+
+    synchronized void setLoggedIn(WebDriver driver, String user) {
+        loggedInAs.put(driver, user);
+    }
+
+    /**
+     * Quits all browsers, including the ones that are still in use. Called when the application exits.
+     */
+    void shutdown() {
+        List<WebDriver> drivers;
+        synchronized (this) {
+            shutdown = true;
+            drivers = new ArrayList<>(all);
+            idle.clear();
+        }
+        warmer.shutdownNow();
+        for (WebDriver driver : drivers) {
+            discard(driver);
+        }
+    }
+
+    private WebDriver launch() {
+        WebDriver driver = factory.get();
+        synchronized (this) {
+            all.add(driver);
+        }
+        return driver;
+    }
+
+    private void discard(WebDriver driver) {
+        synchronized (this) {
+            all.remove(driver);
+            loggedInAs.remove(driver);
+            tutorialsServed.remove(driver);
+        }
+        try {
+            driver.quit();
+        } catch (WebDriverException e) {
+            // browser is already gone
+        }
+    }
+
+    /**
+     * A browser that crashed or was closed by the user throws on any command.
+     */
+    private boolean isHealthy(WebDriver driver) {
+        try {
+            return !driver.getWindowHandles().isEmpty();
+        } catch (WebDriverException e) {
+            return false;
+        }
+    }
+}
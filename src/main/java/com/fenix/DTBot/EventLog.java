@@ -0,0 +1,201 @@
+package com.fenix.DTBot;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes {@link BotEvent}s as JSON lines to a local file on a background thread. Posting an event never blocks: if the
+ * writer falls behind and the buffer fills up, events are dropped and counted instead. The file is rotated once it
+ * grows past a size limit, keeping a fixed number of old files around.
+ * <p>
+ * Several processes on one machine may log at the same time. Each claims one of a fixed number of file names by
+ * locking a file next to it, so no two processes rotate or append to the same file and the number of files stays
+ * bounded across runs. A process that finds every name taken drops its events.
+ */
+class EventLog {
+
+    private static final int CAPACITY = 8192; // events buffered before new ones are dropped
+    private static final long MAX_FILE_SIZE = 10L * 1024 * 1024;
+    private static final int MAX_FILES = 5; // current file plus rotated ones
+    private static final int MAX_WRITERS = 4; // processes that can log at the same time
+
+    private final File file; // current log file, rotated ones get a number appended, null if no name was free
+    private final FileLock lock; // held on the lock file of the name for as long as the log is open
+    private final BlockingQueue<BotEvent> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private Writer out;
+    private long size; // bytes in the current file
+
+    /**
+     * Claims a file name and starts the writer thread.
+     *
+     * @param file file to write to, other processes get a number inserted before the extension
+     */
+    EventLog(File file) {
+        //noinspection ResultOfMethodCallIgnored
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File claimed = null;
+        FileLock held = null;
+        for (int i = 0; i < MAX_WRITERS && held == null; i++) {
+            claimed = i == 0 ? file : withSuffix(file, "-" + i);
+            held = tryLock(new File(claimed.getPath() + ".lock"));
+        }
+        this.file = held != null ? claimed : null;
+        this.lock = held;
+        closed = held == null;
+        writer = new Thread(this::drain, "EventLog writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Hands an event to the writer thread without waiting.
+     *
+     * @param event event to log
+     */
+    void post(BotEvent event) {
+        if (closed || !queue.offer(event)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of events that were dropped because the writer could not keep up
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the remaining events and closes the file.
+     */
+    void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return file of the same name with the suffix inserted before the extension, e.g. events-1.jsonl
+     */
+    private static File withSuffix(File file, String suffix) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(file.getParentFile(), dot > 0
+                ? name.substring(0, dot) + suffix + name.substring(dot)
+                : name + suffix);
+    }
+
+    /**
+     * @return lock on the file, or {@code null} if another process or log holds it or it could not be created
+     */
+    private static FileLock tryLock(File lockFile) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock held = channel.tryLock();
+            if (held != null) {
+                return held;
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            // taken by a log of this process, or not available at all
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // not locked anyway
+        }
+        return null;
+    }
+
+    private void drain() {
+        List<BotEvent> batch = new ArrayList<>();
+        try {
+            while (!closed || !queue.isEmpty()) {
+                BotEvent first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                for (BotEvent event : batch) {
+                    write(event.toJSON());
+                }
+                batch.clear();
+                out.flush(); // the queue is empty, a good time to make the events visible
+            }
+        } catch (InterruptedException | IOException e) {
+            // nothing sensible to log to, events of this run are lost from here on
+        } finally {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+                if (lock != null) {
+                    lock.channel().close(); // releases the name for the next process
+                }
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    private void write(String line) throws IOException {
+        if (out == null || size > MAX_FILE_SIZE) {
+            rotate();
+        }
+        out.write(line);
+        out.write('\n');
+        size += line.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    /**
+     * Closes the current file and shifts it and the older files one number up, dropping the oldest.
+     */
+    private void rotate() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        if (file.exists() && (out != null || file.length() > MAX_FILE_SIZE)) {
+            //noinspection ResultOfMethodCallIgnored
+            numbered(MAX_FILES - 1).delete();
+            for (int i = MAX_FILES - 2; i >= 1; i--) {
+                //noinspection ResultOfMethodCallIgnored
+                numbered(i).renameTo(numbered(i + 1));
+            }
+            //noinspection ResultOfMethodCallIgnored
+            file.renameTo(numbered(1));
+        }
+        size = file.length();
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    private File numbered(int i) {
+        return new File(file.getPath() + "." + i);
+    }
+}
@@ -0,0 +1,58 @@
+package com.fenix.DTBot;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Metadata of a single lesson as listed in the video player of a tutorial.
+ */
+class LessonInfo {
+
+    private final String title; // data-title of the lesson div
+    private final String number; // data-position of the lesson div
+    private final String id; // data-lesson_id of the lesson div, appended to #play- to open the lesson
+    private String link; // video source, null until resolved
+    private List<String> alternates = Collections.emptyList(); // other sources of the same video
+
+    LessonInfo(String title, String number, String id, String link) {
+        this.title = title;
+        this.number = number;
+        this.id = id;
+        this.link = link;
+    }
+
+    String getTitle() {
+        return title;
+    }
+
+    String getNumber() {
+        return number;
+    }
+
+    String getID() {
+        return id;
+    }
+
+    String getLink() {
+        return link;
+    }
+
+    void setLink(String link) {
+        this.link = link;
+    }
+
+    List<String> getAlternates() {
+        return alternates;
+    }
+
+    void setAlternates(List<String> alternates) {
+        this.alternates = alternates;
+    }
+
+    /**
+     * @return file name the video of this lesson is saved as
+     */
+    String getFileName() {
+        return number + " - " + title + ".mp4";
+    }
+}
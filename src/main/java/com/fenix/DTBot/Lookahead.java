@@ -0,0 +1,139 @@
+package com.fenix.DTBot;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Takes the next tutorials from a {@link TutorialSource} ahead of time and lets a background thread fetch their
+ * metadata while the current tutorial is scraped, so that the bot can move on without waiting for the next tutorial
+ * page. Tutorials are handed out in the order the source gave them.
+ */
+class Lookahead {
+
+    private final TutorialSource source;
+    private final int depth; // tutorials prepared beyond the one being scraped
+    private final Consumer<QueueEntry> prefetch; // stores the metadata of a tutorial in its entry
+    private final Logger log;
+    private final ExecutorService thread;
+    private final Deque<Future<QueueEntry>> ahead = new ArrayDeque<>(); // null results mean the source ran dry
+
+    /**
+     * What was read of a tutorial ahead of time.
+     */
+    static class Prefetch {
+        final String url; // tutorial URL the site redirected to
+        final String title; // page title, which holds the tutorial name
+        final String playerURL; // target of the link to the video player
+        final List<LessonInfo> lessons; // lessons listed in the cloud player, null if they were not read
+
+        Prefetch(String url, String title, String playerURL, List<LessonInfo> lessons) {
+            this.url = url;
+            this.title = title;
+            this.playerURL = playerURL;
+            this.lessons = lessons;
+        }
+    }
+
+    /**
+     * @param source   source to take tutorials from
+     * @param depth    number of tutorials to prepare beyond the current one
+     * @param prefetch fetches the metadata of a tutorial, called on the background thread
+     * @param log      logger to report to
+     */
+    Lookahead(TutorialSource source, int depth, Consumer<QueueEntry> prefetch, Logger log) {
+        this.source = source;
+        this.depth = depth;
+        this.prefetch = prefetch;
+        this.log = log;
+        thread = Executors.newSingleThreadExecutor(r -> {
+            Thread lookahead = new Thread(r, "Lookahead");
+            lookahead.setDaemon(true);
+            return lookahead;
+        });
+    }
+
+    /**
+     * Hands out the next tutorial, with its metadata if the background thread got to it in time, and starts preparing
+     * the ones after it.
+     *
+     * @return next tutorial, or {@code null} if the source has nothing left
+     * @throws IOException if the source could not be reached
+     */
+    QueueEntry next() throws IOException {
+        while (ahead.size() <= depth) {
+            ahead.add(thread.submit(() -> {
+                QueueEntry entry = source.next();
+                if (entry != null) {
+                    try {
+                        prefetch.accept(entry);
+                    } catch (RuntimeException e) {
+                        // the entry was taken from the source, so it is handed out without metadata rather than lost
+                        log.warning("Lookahead failed: " + e);
+                        entry.setPrefetch(null);
+                    }
+                }
+                return entry;
+            }));
+        }
+
+        QueueEntry entry = await(ahead.poll());
+        if (entry != null) {
+            return entry;
+        }
+
+        // the source ran dry while preparing, but tutorials may have been deferred since
+        while (!ahead.isEmpty()) {
+            entry = await(ahead.poll());
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return source.next();
+    }
+
+    /**
+     * @return the prepared tutorial, or {@code null} if the source ran dry or failed before handing one out
+     */
+    private QueueEntry await(Future<QueueEntry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            log.warning("Lookahead failed: " + e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Stops the background thread. Tutorials it took from the source but did not hand out are given back when the
+     * source is closed.
+     *
+     * @param cleanup run on the background thread once it is idle, e.g. to release its browser
+     */
+    void close(Runnable cleanup) {
+        for (Future<QueueEntry> future : ahead) {
+            future.cancel(false);
+        }
+        thread.submit(cleanup);
+        thread.shutdown();
+        try {
+            thread.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -6,8 +6,14 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Logger;
+
 public class Main extends Application {
 
+    private Controller controller;
 
     @Override
     public void start(Stage primaryStage) throws Exception{
@@ -16,8 +22,22 @@ public class Main extends Application {
 
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/main.fxml"));
         Parent root = loader.load();
-        Controller controller = loader.getController();
+        controller = loader.getController();
         controller.setStage(primaryStage);
+        // --worker=host:port leases tutorials from a coordinator instead of reading the queue file
+        Map<String, String> named = getParameters().getNamed();
+        if (named.containsKey("worker")) {
+            controller.setCoordinator(named.get("worker"));
+        }
+        // --record=<archive> records every run, --replay=<archive> works on a recorded run without network access.
+        // --latency=<ms> replaces the recorded page latencies by a fixed one
+        if (named.containsKey("record")) {
+            controller.setRecordArchive(new File(named.get("record")));
+        }
+        if (named.containsKey("replay")) {
+            startReplay(new File(named.get("replay")), named.get("latency"));
+        }
+        controller.prewarm();
 
         primaryStage.setTitle("DTBot - by Jean-Luc");
         Scene scene = new Scene(root);
@@ -26,5 +46,68 @@ public class Main extends Application {
         primaryStage.show();
     }
 
+    /**
+     * Starts serving a recorded run. Bad arguments are reported and leave the application working on the real site.
+     *
+     * @param archive recorded run
+     * @param latency fixed page latency in milliseconds, {@code null} to replay the recorded ones
+     */
+    private void startReplay(File archive, String latency) {
+        long delay = -1;
+        if (latency != null) {
+            try {
+                delay = Long.parseLong(latency);
+            } catch (NumberFormatException e) {
+                delay = -1;
+            }
+            if (delay < 0) {
+                System.err.println("--latency requires a number of milliseconds, not replaying");
+                return;
+            }
+        }
+        ReplayServer replay = null;
+        try {
+            replay = new ReplayServer(archive, delay, Logger.getLogger(Bot.class.getName()));
+            replay.start();
+            controller.setReplay(replay);
+        } catch (IOException e) {
+            System.err.println("Could not replay " + archive + ": " + e.getMessage());
+            if (replay != null) {
+                replay.stop();
+            }
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        controller.shutdown(); // quit browsers so that no Firefox process outlives the application
+    }
+
+    /**
+     * Launches the user interface, or with <code>--coordinator=&lt;port&gt; --queue=&lt;file&gt;</code> a coordinator
+     * that hands out the queue to bots started with <code>--worker=&lt;host&gt;:&lt;port&gt;</code>.
+     *
+     * @param args command line arguments
+     * @throws Exception if the coordinator failed
+     */
+    public static void main(String[] args) throws Exception {
+        String port = null, queue = null;
+        for (String arg : args) {
+            if (arg.startsWith("--coordinator=")) {
+                port = arg.substring("--coordinator=".length());
+            } else if (arg.startsWith("--queue=")) {
+                queue = arg.substring("--queue=".length());
+            }
+        }
+        if (port == null) {
+            launch(args);
+        } else if (queue == null) {
+            System.err.println("--coordinator requires --queue=<file>");
+        } else if (!port.matches("\\d{1,5}")) {
+            System.err.println("--coordinator requires a port number");
+        } else {
+            Coordinator.run(Integer.parseInt(port), new File(queue));
+        }
+    }
 
 }
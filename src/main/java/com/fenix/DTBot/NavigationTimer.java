@@ -0,0 +1,93 @@
+package com.fenix.DTBot;
+
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * Measures how long it takes to navigate to each lesson and resolve its video link. The averages of every browser
+ * profile are kept in the preferences so that a run can be compared against the last run with the other profile.
+ */
+class NavigationTimer {
+
+    private final String profile; // name of the browser profile the timings belong to
+    private final Preferences prefs = Preferences.userNodeForPackage(NavigationTimer.class).node("navigationTiming");
+
+    private int lessons;
+    private long navigateTotal, resolveTotal; // in milliseconds
+    private long navigateStart, resolveStart;
+    private long lastNavigate, lastResolve; // timing of the last lesson
+
+    NavigationTimer(String profile) {
+        this.profile = profile;
+    }
+
+    void startNavigation() {
+        navigateStart = System.currentTimeMillis();
+    }
+
+    void startResolving() {
+        resolveStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Completes the timing of a lesson.
+     */
+    void finishLesson() {
+        long now = System.currentTimeMillis();
+        lastNavigate = resolveStart - navigateStart;
+        lastResolve = now - resolveStart;
+        lessons++;
+        navigateTotal += lastNavigate;
+        resolveTotal += lastResolve;
+    }
+
+    /**
+     * @return milliseconds it took to resolve the video link of the last lesson
+     */
+    long getLastResolve() {
+        return lastResolve;
+    }
+
+    /**
+     * @return human readable timing of the last lesson
+     */
+    String describeLast() {
+        return String.format("navigate %d ms, resolve %d ms", lastNavigate, lastResolve);
+    }
+
+    /**
+     * Summarizes the lessons timed since the last summary, stores the averages for this profile and compares them
+     * with the stored averages of the other profiles.
+     *
+     * @return human readable report, or {@code null} if no lessons were timed
+     */
+    String report() {
+        if (lessons == 0) {
+            return null;
+        }
+        long navigate = navigateTotal / lessons;
+        long resolve = resolveTotal / lessons;
+        StringBuilder report = new StringBuilder(String.format(
+                "Lesson timing (%s profile, %d lessons): navigate %d ms, resolve %d ms, %d ms per lesson",
+                profile, lessons, navigate, resolve, navigate + resolve));
+
+        prefs.putLong(profile + ".navigate", navigate);
+        prefs.putLong(profile + ".resolve", resolve);
+        try {
+            for (String key : prefs.keys()) {
+                String other = key.substring(0, key.indexOf('.'));
+                if (key.endsWith(".navigate") && !other.equals(profile)) {
+                    long otherTotal = prefs.getLong(key, 0) + prefs.getLong(other + ".resolve", 0);
+                    report.append(String.format(" | last %s profile run: %d ms per lesson", other, otherTotal));
+                }
+            }
+        } catch (BackingStoreException e) {
+            // comparison is optional
+        }
+
+        lessons = 0;
+        navigateTotal = 0;
+        resolveTotal = 0;
+        return report.toString();
+    }
+}
@@ -0,0 +1,173 @@
+package com.fenix.DTBot;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the directories tutorials can be downloaded to. Each tutorial is placed on the root with the least
+ * downloads currently writing to it that still has room for the tutorial. Space that has been promised to running
+ * downloads is reserved so that concurrent downloads cannot overcommit a disk.
+ * <p>
+ * A placed tutorial holds its estimated size on its root until it is done, so that tutorials placed one after another
+ * are not all put on a disk that only has room for the first. Its downloads take their reservations out of what the
+ * tutorial holds, instead of reserving the same bytes a second time.
+ */
+class OutputRoots {
+
+    private static final long SAFETY_MARGIN = 64L * 1024 * 1024; // never fill a disk up to the last byte
+
+    private final List<File> roots = new ArrayList<>();
+    private final Map<File, Long> reserved = new HashMap<>(); // bytes promised to running downloads
+    private final Map<File, Integer> activeWrites = new HashMap<>(); // running downloads per root
+    private final Map<String, Placement> placements = new HashMap<>(); // space held by tutorials, by URL
+
+    /**
+     * Space a tutorial holds on its root that none of its downloads has taken yet.
+     */
+    private static class Placement {
+        final File root;
+        long bytes; // part of the reserved bytes of the root
+
+        Placement(File root) {
+            this.root = root;
+        }
+    }
+
+    synchronized void add(File root) {
+        if (!roots.contains(root)) {
+            roots.add(root);
+            reserved.put(root, 0L);
+            activeWrites.put(root, 0);
+        }
+    }
+
+    /**
+     * @param root output root
+     * @return bytes that can still be written to the root without touching reserved space
+     */
+    synchronized long getAvailable(File root) {
+        return root.getUsableSpace() - reserved.get(root) - SAFETY_MARGIN;
+    }
+
+    /**
+     * Looks for an existing tutorial directory on any of the roots.
+     *
+     * @param name name of the tutorial directory
+     * @return the existing directory, or {@code null} if the tutorial has not been downloaded before
+     */
+    synchronized File find(String name) {
+        for (File root : roots) {
+            File dir = new File(root, name);
+            if (dir.exists()) {
+                return dir;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Picks the root a new tutorial should be downloaded to and holds its size there until {@link #unplace(String)}.
+     *
+     * @param tutorialURL   tutorial to place
+     * @param expectedBytes size of the tutorial, or a negative number if unknown
+     * @return the chosen root, or {@code null} if the tutorial fits on none of them
+     */
+    synchronized File place(String tutorialURL, long expectedBytes) {
+        unplace(tutorialURL); // a deferred tutorial may be placed anew
+        File best = null;
+        for (File root : roots) {
+            long available = getAvailable(root);
+            if (available < Math.max(expectedBytes, 0)) {
+                continue; // does not fit
+            }
+            if (best == null
+                    || activeWrites.get(root) < activeWrites.get(best)
+                    || activeWrites.get(root).equals(activeWrites.get(best)) && available > getAvailable(best)) {
+                best = root;
+            }
+        }
+        if (best != null) {
+            hold(tutorialURL, best, expectedBytes);
+        }
+        return best;
+    }
+
+    /**
+     * Holds space for a tutorial on its root, in addition to what it holds already. Used when the size of a tutorial
+     * only becomes known, or can only be estimated, once it is scraped. Nothing is checked, since the tutorial is
+     * already being downloaded to the root.
+     *
+     * @param tutorialURL tutorial the space is held for
+     * @param root        root the tutorial is downloaded to
+     * @param bytes       bytes to hold, nothing if negative
+     */
+    synchronized void hold(String tutorialURL, File root, long bytes) {
+        Placement placement = placements.computeIfAbsent(tutorialURL, url -> new Placement(root));
+        if (placement.root.equals(root) && bytes > 0) {
+            placement.bytes += bytes;
+            reserved.put(root, reserved.get(root) + bytes);
+        }
+    }
+
+    /**
+     * Gives back what a tutorial still holds, once all its downloads are done or it was given up on.
+     *
+     * @param tutorialURL tutorial to release
+     */
+    synchronized void unplace(String tutorialURL) {
+        Placement placement = placements.remove(tutorialURL);
+        if (placement != null) {
+            reserved.put(placement.root, reserved.get(placement.root) - placement.bytes);
+        }
+    }
+
+    /**
+     * Reserves space for a download that is about to start. Every successful call must be paired with a call to
+     * {@link #release(File, long)}.
+     *
+     * @param root  root the download writes to
+     * @param bytes size of the download, or a negative number if unknown
+     * @return {@code true} if the download fits; {@code false} otherwise in which case nothing was reserved
+     */
+    synchronized boolean reserve(File root, long bytes) {
+        return reserve(root, bytes, null);
+    }
+
+    /**
+     * Reserves space for a download of a placed tutorial, taking as much as possible out of what the tutorial holds.
+     * Every successful call must be paired with a call to {@link #release(File, long)}.
+     *
+     * @param root        root the download writes to
+     * @param bytes       size of the download, or a negative number if unknown
+     * @param tutorialURL tutorial the download belongs to, {@code null} to reserve room of its own
+     * @return {@code true} if the download fits; {@code false} otherwise in which case nothing was reserved
+     */
+    synchronized boolean reserve(File root, long bytes, String tutorialURL) {
+        bytes = Math.max(bytes, 0);
+        Placement placement = tutorialURL != null ? placements.get(tutorialURL) : null;
+        long taken = placement != null && placement.root.equals(root) ? Math.min(placement.bytes, bytes) : 0;
+        if (getAvailable(root) + taken < bytes) {
+            return false;
+        }
+        if (placement != null) {
+            placement.bytes -= taken;
+        }
+        reserved.put(root, reserved.get(root) + bytes - taken);
+        activeWrites.put(root, activeWrites.get(root) + 1);
+        return true;
+    }
+
+    /**
+     * Releases the space reserved by {@link #reserve(File, long)} once the download has finished or failed.
+     *
+     * @param root  root the download wrote to
+     * @param bytes same size that was passed to {@link #reserve(File, long)}
+     */
+    synchronized void release(File root, long bytes) {
+        reserved.put(root, reserved.get(root) - Math.max(bytes, 0));
+        activeWrites.put(root, activeWrites.get(root) - 1);
+    }
+}
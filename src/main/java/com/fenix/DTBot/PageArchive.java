@@ -0,0 +1,127 @@
+package com.fenix.DTBot;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Records the pages a bot scrapes and the response headers of the videos it downloads into a zip archive, so that the
+ * run can be replayed offline by a {@link ReplayServer}.
+ * <p>
+ * Every page is stored compressed under <code>pages/</code>. Every record also gets a numbered entry under
+ * <code>index/</code> that holds one tab separated line:
+ * <pre>
+ * page   &lt;url&gt;  &lt;latency in ms&gt;  &lt;entry&gt;
+ * media  &lt;url&gt;  &lt;status&gt;  &lt;header&gt;: &lt;value&gt;  ...
+ * </pre>
+ * The index is written as the records come in, so a run that crashes before the archive is closed can still be
+ * replayed up to its last record.
+ */
+class PageArchive {
+
+    static final String INDEX = "index/"; // prefix of the index entries
+    // headers replayed for stand-in videos, the rest describe the CDN rather than the video
+    static final List<String> MEDIA_HEADERS = Arrays.asList("Content-Length", "Content-Type", "Accept-Ranges", "ETag",
+            "Last-Modified");
+
+    private final File file;
+    private final ZipOutputStream zip;
+    private final Logger log;
+    private final Set<String> media = new HashSet<>(); // video links already recorded
+    private int pages;
+    private int records; // index entries written
+    private boolean closed;
+
+    /**
+     * @param file archive to create, replaced if it exists
+     * @param log  logger to report to
+     * @throws IOException if the archive could not be created
+     */
+    PageArchive(File file, Logger log) throws IOException {
+        this.file = file;
+        this.log = log;
+        zip = new ZipOutputStream(new FileOutputStream(file));
+    }
+
+    /**
+     * Stores the source of a page.
+     *
+     * @param url     URL of the page, including the fragment that selects a lesson
+     * @param html    source of the page as the browser shows it
+     * @param latency time it took the page to become usable in milliseconds
+     */
+    synchronized void recordPage(String url, String html, long latency) {
+        if (closed) {
+            return;
+        }
+        String entry = String.format("pages/%06d.html", ++pages);
+        try {
+            zip.putNextEntry(new ZipEntry(entry));
+            zip.write(html.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            writeIndex("page\t" + url + "\t" + latency + "\t" + entry);
+        } catch (IOException e) {
+            log.warning("Could not record page: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stores the status and headers of a video response. Only the first response for each link is kept.
+     *
+     * @param url        video link
+     * @param connection connection whose response headers have arrived
+     */
+    synchronized void recordMedia(String url, HttpURLConnection connection) {
+        if (closed || !media.add(url)) {
+            return;
+        }
+        try {
+            StringBuilder line = new StringBuilder("media\t").append(url).append('\t')
+                    .append(connection.getResponseCode());
+            for (String header : MEDIA_HEADERS) {
+                String value = connection.getHeaderField(header);
+                if (value != null) {
+                    line.append('\t').append(header).append(": ").append(value);
+                }
+            }
+            writeIndex(line.toString());
+        } catch (IOException e) {
+            log.finest(() -> "Could not record video headers: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stores an index line in an entry of its own and pushes it to the file, where it survives a crash.
+     */
+    private void writeIndex(String line) throws IOException {
+        zip.putNextEntry(new ZipEntry(String.format(INDEX + "%06d.tsv", ++records)));
+        zip.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+        zip.flush();
+    }
+
+    /**
+     * Closes the archive.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            zip.close();
+            log.finer("Recorded " + pages + " pages and " + media.size() + " videos to " + file.getName());
+        } catch (IOException e) {
+            log.warning("Could not write " + file.getName() + ": " + e.getMessage());
+        }
+    }
+}
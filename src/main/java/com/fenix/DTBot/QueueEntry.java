@@ -0,0 +1,158 @@
+package com.fenix.DTBot;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A single line of the queue file. Besides the tutorial URL, a line may carry optional whitespace separated
+ * <code>key=value</code> annotations that influence the order in which tutorials are downloaded, e.g.
+ * <pre>
+ * http://www.digitaltutors.com/tutorial/539-Beginners-Guide-to-3ds-Max priority=2 deadline=2015-08-01
+ * </pre>
+ * The <code>lessons</code> annotation restricts the download to a comma separated list of lesson ids and allows it
+ * to go into an existing tutorial folder. <code>resume=true</code> also allows an existing folder and downloads the
+ * lessons that are missing from it. Lines that are blank or start with <code>#</code> are ignored.
+ */
+class QueueEntry {
+
+    private final String line; // line of the queue file, without surrounding whitespace
+    private final String url; // tutorial URL as written in the queue
+    private final int order; // position in the queue file, used to break ties
+    private int priority; // higher priorities are downloaded first
+    private LocalDate deadline; // tutorials with earlier deadlines are downloaded first
+    private Set<String> lessonIDs; // lessons to download, null for all of them
+    private boolean resume; // whether an existing tutorial folder is completed instead of skipped
+
+    // metadata gathered by probing the tutorial, -1 if unknown
+    private int lessonCount = -1;
+    private long totalBytes = -1;
+
+    private boolean deferred; // whether the tutorial was already put back for lack of space
+    private Lookahead.Prefetch prefetch; // tutorial page read ahead of time, null if it was not
+
+    QueueEntry(String line, String url, int order) {
+        this.line = line;
+        this.url = url;
+        this.order = order;
+    }
+
+    /**
+     * Parses a line of the queue file.
+     *
+     * @param line  raw line from the queue file
+     * @param order position of the line in the queue file
+     * @return the parsed entry, or {@code null} if the line is blank or a comment
+     * @throws IllegalArgumentException if an annotation could not be interpreted
+     */
+    static QueueEntry parse(String line, int order) throws IllegalArgumentException {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+            return null;
+        }
+
+        String[] tokens = line.split("\\s+");
+        QueueEntry entry = new QueueEntry(line, tokens[0], order);
+
+        for (int i = 1; i < tokens.length; i++) {
+            int split = tokens[i].indexOf('=');
+            if (split < 1) {
+                throw new IllegalArgumentException("Bad annotation: " + tokens[i]);
+            }
+            String key = tokens[i].substring(0, split).toLowerCase();
+            String value = tokens[i].substring(split + 1);
+
+            try {
+                switch (key) {
+                    case "priority":
+                        entry.priority = Integer.parseInt(value);
+                        break;
+                    case "deadline":
+                        entry.deadline = LocalDate.parse(value);
+                        break;
+                    case "lessons":
+                        entry.lessonIDs = new LinkedHashSet<>(Arrays.asList(value.split(",")));
+                        break;
+                    case "resume":
+                        entry.resume = Boolean.parseBoolean(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown annotation: " + key);
+                }
+            } catch (NumberFormatException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Bad value for " + key + ": " + value);
+            }
+        }
+        return entry;
+    }
+
+    String getLine() {
+        return line;
+    }
+
+    String getURL() {
+        return url;
+    }
+
+    int getOrder() {
+        return order;
+    }
+
+    int getPriority() {
+        return priority;
+    }
+
+    LocalDate getDeadline() {
+        return deadline;
+    }
+
+    Set<String> getLessonIDs() {
+        return lessonIDs;
+    }
+
+    /**
+     * @return {@code true} if an existing tutorial folder is completed instead of skipped
+     */
+    boolean isResume() {
+        return resume || lessonIDs != null;
+    }
+
+    int getLessonCount() {
+        return lessonCount;
+    }
+
+    void setLessonCount(int lessonCount) {
+        this.lessonCount = lessonCount;
+    }
+
+    long getTotalBytes() {
+        return totalBytes;
+    }
+
+    void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    boolean isDeferred() {
+        return deferred;
+    }
+
+    void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+    Lookahead.Prefetch getPrefetch() {
+        return prefetch;
+    }
+
+    void setPrefetch(Lookahead.Prefetch prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
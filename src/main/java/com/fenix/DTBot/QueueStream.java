@@ -0,0 +1,206 @@
+package com.fenix.DTBot;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Hands out the tutorials of a queue file while reading it, for queues too large to be held in memory. Lines are read
+ * in batches as tutorials are needed. Tutorials are handed out in the order of the file, so priorities, deadlines and
+ * shortest-job-first are not applied, as they need the whole queue.
+ * <p>
+ * Repeated lines are dropped. Instead of the lines themselves, a 64 bit hash of every tutorial is kept, which is a few
+ * bytes per tutorial. The total is counted in a first pass over the file and lowered whenever a line is dropped, so
+ * progress can be shown from the start without keeping the queue.
+ */
+class QueueStream implements TutorialSource {
+
+    private static final int BATCH = 256; // lines read at once
+
+    private final File file;
+    private final Predicate<String> valid; // whether a URL is a tutorial page
+    private final Logger log;
+    private final BufferedReader in;
+    private final Deque<QueueEntry> batch = new ArrayDeque<>(); // read but not handed out yet
+    private final Deque<QueueEntry> deferred = new ArrayDeque<>(); // handed out again once the file is read
+    private final LongHashSet seen = new LongHashSet(); // hashes of the tutorials read so far
+    private int size; // tutorials in the queue, without the dropped lines found so far
+    private int order; // lines read so far
+    private boolean exhausted; // whether the whole file was read
+
+    /**
+     * @param file  queue file
+     * @param valid decides whether a URL is a tutorial page, others are dropped
+     * @param log   logger to report to
+     * @throws IOException if the queue could not be read
+     */
+    QueueStream(File file, Predicate<String> valid, Logger log) throws IOException {
+        this.file = file;
+        this.valid = valid;
+        this.log = log;
+
+        // only counts the lines, their entries are read again when they are due
+        try (BufferedReader counter = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = counter.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    size++;
+                }
+            }
+        }
+        in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Hands out the next tutorial of the file, or a deferred one once the file is read.
+     *
+     * @return next tutorial, or {@code null} if all tutorials have been handed out
+     * @throws IOException if the queue could not be read
+     */
+    @Override
+    public synchronized QueueEntry next() throws IOException {
+        while (batch.isEmpty() && !exhausted) {
+            readBatch();
+        }
+        if (!batch.isEmpty()) {
+            return batch.poll();
+        }
+        return deferred.poll();
+    }
+
+    /**
+     * Reads the next lines of the file and keeps the tutorials that are valid and new.
+     */
+    private void readBatch() throws IOException {
+        for (int i = 0; i < BATCH; i++) {
+            String line = in.readLine();
+            if (line == null) {
+                exhausted = true;
+                log.finer(() -> "Read " + order + " lines of " + file.getName() + ", " + size + " tutorials");
+                return;
+            }
+
+            QueueEntry entry;
+            try {
+                entry = QueueEntry.parse(line, order++);
+            } catch (IllegalArgumentException e) {
+                log.warning("Skipping queue line: " + line.trim() + " (" + e.getMessage() + ")");
+                size--;
+                continue;
+            }
+            if (entry == null) {
+                continue; // blank or comment, not counted
+            }
+            if (!valid.test(entry.getURL())) {
+                log.warning("Bad URL: " + entry.getURL());
+                size--;
+                continue;
+            }
+            if (!seen.add(hash(entry))) {
+                log.finest(() -> "Skipping repeated queue line: " + entry.getLine());
+                size--;
+                continue;
+            }
+            batch.add(entry);
+        }
+    }
+
+    /**
+     * @return 64 bit FNV-1a hash of the URL and requested lessons of a tutorial
+     */
+    private static long hash(QueueEntry entry) {
+        String key = entry.getLessonIDs() == null
+                ? entry.getURL()
+                : entry.getURL() + " lessons=" + String.join(",", entry.getLessonIDs());
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public synchronized void defer(QueueEntry entry) {
+        deferred.add(entry);
+    }
+
+    @Override
+    public void completed(QueueEntry entry) {
+        // nothing to keep track of locally
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // nothing left to read
+        }
+    }
+
+    /**
+     * Set of longs in a single array with open addressing, a fraction of the memory of a {@code HashSet<Long>}.
+     */
+    static class LongHashSet {
+        private static final long EMPTY = 0; // stored separately, since it marks free slots
+
+        private long[] slots = new long[1024];
+        private int count;
+        private boolean containsEmpty;
+
+        /**
+         * @return {@code true} if the value was not in the set yet
+         */
+        boolean add(long value) {
+            if (value == EMPTY) {
+                boolean added = !containsEmpty;
+                containsEmpty = true;
+                return added;
+            }
+            if ((count + 1) * 4 > slots.length * 3) {
+                grow();
+            }
+            if (!insert(slots, value)) {
+                return false;
+            }
+            count++;
+            return true;
+        }
+
+        private static boolean insert(long[] slots, long value) {
+            int mask = slots.length - 1;
+            int slot = (int) (value ^ value >>> 32) & mask;
+            while (slots[slot] != EMPTY) {
+                if (slots[slot] == value) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = value;
+            return true;
+        }
+
+        private void grow() {
+            long[] larger = new long[slots.length * 2];
+            for (long value : slots) {
+                if (value != EMPTY) {
+                    insert(larger, value);
+                }
+            }
+            slots = larger;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.fenix.DTBot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Serves a run recorded by {@link PageArchive} from a local HTTP server so that the scraping and scheduling of the bot
+ * can be benchmarked without network access.
+ * <p>
+ * Recorded pages are served under their original path with their scripts removed. Links to the site and to recorded
+ * videos are rewritten to point at this server. Lessons are opened by changing the fragment of the player URL, which
+ * does not reach the server, so a small script is injected that fetches the page recorded for the new fragment. Videos
+ * are replaced by stand-ins of their recorded size and headers. Every page is delayed by its recorded latency, or by a
+ * fixed synthetic one.
+ */
+class ReplayServer {
+
+    private static final String PREFIX = "/__replay/";
+    private static final Pattern SCRIPTS = Pattern.compile("<script\\b.*?</script>",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    // replaces the document with the page recorded for the current URL whenever the fragment changes
+    private static final String FRAGMENT_SCRIPT = "<script>(function () {"
+            + "function load() {"
+            + "    var x = new XMLHttpRequest();"
+            + "    x.open('GET', '" + PREFIX + "page?url=' + encodeURIComponent(location.href), false);"
+            + "    x.send();"
+            + "    if (x.status == 200) { document.documentElement.innerHTML = x.responseText; }"
+            + "}"
+            + "window.addEventListener('hashchange', load);"
+            + "if (location.hash) { load(); }"
+            + "})();</script>";
+    private static final int CHUNK = 64 * 1024;
+
+    private final ZipFile archive;
+    private final long latency; // synthetic latency in milliseconds, negative to use the recorded ones
+    private final Logger log;
+    private final Map<String, Page> pages = new LinkedHashMap<>(); // by path, query and fragment
+    private final List<Media> media = new ArrayList<>(); // stand-in number is the index
+    private final Set<String> origins = new LinkedHashSet<>(); // scheme and host of the recorded pages
+    private HttpServer server;
+    private String home; // origin of this server
+
+    private static class Page {
+        final String entry;
+        final long latency;
+
+        Page(String entry, long latency) {
+            this.entry = entry;
+            this.latency = latency;
+        }
+    }
+
+    private static class Media {
+        final String url;
+        final int status;
+        final Map<String, String> headers = new LinkedHashMap<>();
+
+        Media(String url, int status) {
+            this.url = url;
+            this.status = status;
+        }
+    }
+
+    /**
+     * @param archive archive written by {@link PageArchive}
+     * @param latency fixed delay of every page in milliseconds, negative to replay the recorded delays
+     * @param log     logger to report to
+     * @throws IOException if the archive could not be read
+     */
+    ReplayServer(File archive, long latency, Logger log) throws IOException {
+        this.archive = open(archive, log);
+        this.latency = latency;
+        this.log = log;
+
+        // index entries are numbered in the order they were recorded
+        List<String> index = new ArrayList<>();
+        for (ZipEntry entry : Collections.list(this.archive.entries())) {
+            if (entry.getName().startsWith(PageArchive.INDEX)) {
+                index.add(entry.getName());
+            }
+        }
+        if (index.isEmpty()) {
+            throw new IOException("Not a recorded run: " + archive.getName());
+        }
+        Collections.sort(index);
+        for (String name : index) {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    this.archive.getInputStream(this.archive.getEntry(name)), StandardCharsets.UTF_8))) {
+                String line = in.readLine();
+                if (line == null) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                try {
+                    if (fields[0].equals("page") && fields.length == 4) {
+                        URL url = new URL(fields[1]);
+                        origins.add(url.getProtocol() + "://" + url.getAuthority());
+                        pages.put(getKey(url), new Page(fields[3], Long.parseLong(fields[2])));
+                    } else if (fields[0].equals("media") && fields.length >= 3) {
+                        Media video = new Media(fields[1], Integer.parseInt(fields[2]));
+                        for (int i = 3; i < fields.length; i++) {
+                            int split = fields[i].indexOf(": ");
+                            video.headers.put(fields[i].substring(0, split), fields[i].substring(split + 2));
+                        }
+                        media.add(video);
+                    }
+                } catch (NumberFormatException | MalformedURLException | StringIndexOutOfBoundsException e) {
+                    log.warning("Skipping index line: " + line);
+                }
+            }
+        }
+        log.finer("Loaded " + pages.size() + " pages and " + media.size() + " videos from " + archive.getName());
+    }
+
+    /**
+     * Opens an archive. An archive whose recording crashed lacks the directory at the end of a zip file, so its
+     * complete entries are copied into a temporary archive that can be opened.
+     *
+     * @param file archive written by {@link PageArchive}
+     * @param log  logger to report to
+     * @return the opened archive
+     * @throws IOException if the archive could not be read at all
+     */
+    private static ZipFile open(File file, Logger log) throws IOException {
+        try {
+            return new ZipFile(file);
+        } catch (ZipException e) {
+            log.warning("Recording was not closed, replaying what it holds: " + file.getName());
+        }
+        File salvaged = File.createTempFile("replay", ".zip");
+        salvaged.deleteOnExit();
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(file));
+             ZipOutputStream out = new ZipOutputStream(new FileOutputStream(salvaged))) {
+            byte[] buffer = new byte[CHUNK];
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        content.write(buffer, 0, read);
+                    }
+                } catch (EOFException | ZipException e) {
+                    break; // the entry that was being written when the recording stopped
+                }
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                content.writeTo(out);
+                out.closeEntry();
+            }
+        } catch (EOFException | ZipException e) {
+            // cut off in the middle of an entry header, everything before it was copied
+        }
+        return new ZipFile(salvaged);
+    }
+
+    /**
+     * Starts serving on a free loopback port.
+     *
+     * @throws IOException if the server could not be started
+     */
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "ReplayServer");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.createContext("/", this::handle);
+        server.start();
+        home = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+        log.info("[*] Replaying on " + home);
+    }
+
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        try {
+            archive.close();
+        } catch (IOException e) {
+            // nothing left to read
+        }
+    }
+
+    /**
+     * @return URL of this server, used by the bot in place of the Digital Tutors home page
+     */
+    String getHomeURL() {
+        return home;
+    }
+
+    /**
+     * Writes a queue with the recorded tutorial pages, pointing at this server.
+     *
+     * @param queue file to write
+     * @throws IOException if the queue could not be written
+     */
+    void writeQueue(File queue) throws IOException {
+        try (PrintWriter out = new PrintWriter(queue, "UTF-8")) {
+            for (String key : pages.keySet()) {
+                if (key.contains("/tutorial/") && !key.contains("#")) {
+                    out.println(home + key);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return path, query and fragment of the URL, which identify a page regardless of the host it came from
+     */
+    private static String getKey(URL url) {
+        return url.getFile() + (url.getRef() == null ? "" : "#" + url.getRef());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            if (path.startsWith(PREFIX + "media/")) {
+                serveMedia(exchange, path.substring((PREFIX + "media/").length()));
+            } else if (path.startsWith(PREFIX + "page")) {
+                String query = exchange.getRequestURI().getRawQuery();
+                String url = query != null && query.startsWith("url=")
+                        ? URLDecoder.decode(query.substring(4), "UTF-8")
+                        : "";
+                servePage(exchange, getKey(new URL(url)), true);
+            } else {
+                servePage(exchange, exchange.getRequestURI().toString(), false);
+            }
+        } catch (MalformedURLException e) {
+            exchange.sendResponseHeaders(400, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void servePage(HttpExchange exchange, String key, boolean fragment) throws IOException {
+        Page page = pages.get(key);
+        if (page == null && key.contains("#")) {
+            page = pages.get(key.substring(0, key.indexOf('#'))); // lesson was not recorded, stay on the player
+        }
+        if (page == null) {
+            log.finest(() -> "Not recorded: " + key);
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        try {
+            Thread.sleep(latency >= 0 ? latency : page.latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        String html = rewrite(read(page.entry));
+        if (fragment) {
+            // only the content of the document element is replaced
+            int start = html.indexOf('>', Math.max(html.toLowerCase().indexOf("<html"), 0)) + 1;
+            int end = html.toLowerCase().lastIndexOf("</html>");
+            html = html.substring(start, end < start ? html.length() : end);
+        } else {
+            int end = html.toLowerCase().lastIndexOf("</body>");
+            html = end < 0 ? html + FRAGMENT_SCRIPT : html.substring(0, end) + FRAGMENT_SCRIPT + html.substring(end);
+        }
+
+        byte[] body = html.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    /**
+     * Points the links of a recorded page at this server and removes its scripts, which would otherwise try to reach
+     * the real site.
+     */
+    private String rewrite(String html) {
+        html = SCRIPTS.matcher(html).replaceAll("");
+        for (int i = 0; i < media.size(); i++) {
+            String url = media.get(i).url;
+            String local = home + PREFIX + "media/" + i + getExtension(url);
+            html = html.replace(url, local).replace(url.replace("&", "&amp;"), local);
+        }
+        for (String origin : origins) {
+            html = html.replace(origin, home);
+        }
+        return html;
+    }
+
+    private static String getExtension(String url) {
+        String path;
+        try {
+            path = new URL(url).getPath();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+        int dot = path.lastIndexOf('.');
+        return dot > path.lastIndexOf('/') ? path.substring(dot) : "";
+    }
+
+    private void serveMedia(HttpExchange exchange, String name) throws IOException {
+        int dot = name.indexOf('.');
+        Media video;
+        try {
+            video = media.get(Integer.parseInt(dot < 0 ? name : name.substring(0, dot)));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        long length = -1;
+        for (Map.Entry<String, String> header : video.headers.entrySet()) {
+            if (header.getKey().equals("Content-Length")) {
+                length = Long.parseLong(header.getValue());
+            } else {
+                exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+            }
+        }
+        boolean head = exchange.getRequestMethod().equals("HEAD");
+        if (video.status / 100 != 2 || length < 0) {
+            exchange.sendResponseHeaders(video.status, -1);
+            return;
+        }
+        if (head) {
+            exchange.getResponseHeaders().set("Content-Length", Long.toString(length));
+            exchange.sendResponseHeaders(video.status, -1);
+            return;
+        }
+
+        // the stand-in has the size of the video, but no content
+        exchange.sendResponseHeaders(video.status, length);
+        OutputStream out = exchange.getResponseBody();
+        byte[] zeros = new byte[CHUNK];
+        for (long sent = 0; sent < length; sent += CHUNK) {
+            out.write(zeros, 0, (int) Math.min(CHUNK, length - sent));
+        }
+    }
+
+    private String read(String entry) throws IOException {
+        try (InputStream in = archive.getInputStream(archive.getEntry(entry))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[CHUNK];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
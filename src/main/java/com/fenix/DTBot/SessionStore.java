@@ -0,0 +1,169 @@
+package com.fenix.DTBot;
+
+import org.openqa.selenium.Cookie;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Stores the cookies of a logged in session on disk so that later runs can skip the login form. The cookies are
+ * encrypted with AES-GCM under a key derived from the login credentials, so the file is useless to anyone who does not
+ * already know them and is silently discarded when the credentials change.
+ */
+class SessionStore {
+
+    private static final int VERSION = 1;
+    private static final int SALT_LENGTH = 16;
+    private static final int IV_LENGTH = 12;
+    private static final int KEY_ITERATIONS = 65536;
+
+    private final File file; // where the encrypted cookies are kept
+    private final String user;
+    private final String pass;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param file location of the encrypted cookie file
+     * @param user login string the session belongs to
+     * @param pass password used to derive the encryption key
+     */
+    SessionStore(File file, String user, String pass) {
+        this.file = file;
+        this.user = user;
+        this.pass = pass;
+    }
+
+    /**
+     * Encrypts the cookies and writes them to the session file, replacing any previous session.
+     *
+     * @param cookies cookies of a logged in browser
+     * @throws IOException if the file could not be written
+     */
+    void save(Set<Cookie> cookies) throws IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(plain);
+        out.writeInt(cookies.size());
+        for (Cookie cookie : cookies) {
+            out.writeUTF(cookie.getName());
+            out.writeUTF(cookie.getValue());
+            out.writeUTF(cookie.getDomain() == null ? "" : cookie.getDomain());
+            out.writeUTF(cookie.getPath() == null ? "/" : cookie.getPath());
+            out.writeLong(cookie.getExpiry() == null ? -1 : cookie.getExpiry().getTime());
+            out.writeBoolean(cookie.isSecure());
+            out.writeBoolean(cookie.isHttpOnly());
+        }
+        out.flush();
+
+        byte[] salt = new byte[SALT_LENGTH];
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(salt);
+        random.nextBytes(iv);
+        byte[] cipherText;
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, deriveKey(salt), new GCMParameterSpec(128, iv));
+            cipherText = cipher.doFinal(plain.toByteArray());
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not encrypt session", e);
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        try (DataOutputStream fileOut = new DataOutputStream(new FileOutputStream(file))) {
+            fileOut.writeInt(VERSION);
+            fileOut.write(salt);
+            fileOut.write(iv);
+            fileOut.write(cipherText);
+        }
+        // only the owner should be able to read the session
+        //noinspection ResultOfMethodCallIgnored
+        file.setReadable(false, false);
+        //noinspection ResultOfMethodCallIgnored
+        file.setReadable(true, true);
+    }
+
+    /**
+     * Reads and decrypts the stored session.
+     *
+     * @return cookies that have not expired yet, or {@code null} if there is no usable session
+     */
+    Set<Cookie> load() {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream fileIn = new DataInputStream(new FileInputStream(file))) {
+            if (fileIn.readInt() != VERSION) {
+                return null;
+            }
+            byte[] salt = new byte[SALT_LENGTH];
+            byte[] iv = new byte[IV_LENGTH];
+            fileIn.readFully(salt);
+            fileIn.readFully(iv);
+            byte[] cipherText = new byte[(int) (file.length() - 4 - SALT_LENGTH - IV_LENGTH)];
+            fileIn.readFully(cipherText);
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, deriveKey(salt), new GCMParameterSpec(128, iv));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(cipher.doFinal(cipherText)));
+
+            Set<Cookie> cookies = new HashSet<>();
+            Date now = new Date();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String value = in.readUTF();
+                String domain = in.readUTF();
+                String path = in.readUTF();
+                long expiry = in.readLong();
+                boolean secure = in.readBoolean();
+                boolean httpOnly = in.readBoolean();
+
+                Date expiryDate = expiry < 0 ? null : new Date(expiry);
+                if (expiryDate != null && expiryDate.before(now)) {
+                    continue; // expired cookies would only be rejected by the server
+                }
+                cookies.add(new Cookie(name, value, domain.isEmpty() ? null : domain, path, expiryDate,
+                        secure, httpOnly));
+            }
+            return cookies.isEmpty() ? null : cookies;
+        } catch (IOException | GeneralSecurityException e) {
+            // corrupt file or different credentials
+            return null;
+        }
+    }
+
+    /**
+     * Removes the stored session, e.g. after the server rejected it.
+     *
+     * @throws IOException if the file could not be deleted
+     */
+    void clear() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private SecretKey deriveKey(byte[] salt) throws GeneralSecurityException {
+        // mixing the user into the salt makes sessions of different accounts incompatible
+        byte[] userBytes = user.getBytes(StandardCharsets.UTF_8);
+        byte[] fullSalt = new byte[salt.length + userBytes.length];
+        System.arraycopy(salt, 0, fullSalt, 0, salt.length);
+        System.arraycopy(userBytes, 0, fullSalt, salt.length, userBytes.length);
+
+        PBEKeySpec spec = new PBEKeySpec(pass.toCharArray(), fullSalt, KEY_ITERATIONS, 128);
+        byte[] key = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        spec.clearPassword();
+        return new SecretKeySpec(key, "AES");
+    }
+}
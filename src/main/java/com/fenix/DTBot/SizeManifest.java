@@ -0,0 +1,159 @@
+package com.fenix.DTBot;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Sizes of the videos of the queue, gathered before any video is downloaded by sending HEAD requests for the resolved
+ * video links. The requests of a tutorial are sent concurrently, and are answered while the next tutorial is scraped.
+ * Videos whose size the server does not tell are estimated from the average of the others.
+ */
+class SizeManifest {
+
+    private static final int TIMEOUT = 10000; // connect and read timeout of a HEAD request in milliseconds
+
+    private final Map<String, Map<String, Long>> sizes = new LinkedHashMap<>(); // lesson sizes by tutorial URL
+    private final ExecutorService pool;
+    private final ExecutorService collector; // adds up the answers of one tutorial after the other
+    private final Logger log;
+    private int unknown; // videos whose size could not be determined
+
+    /**
+     * @param threads number of concurrent HEAD requests
+     * @param log     logger to report to
+     */
+    SizeManifest(int threads, Logger log) {
+        this.log = log;
+        pool = Executors.newFixedThreadPool(threads);
+        collector = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Sends the HEAD requests for the videos of a tutorial and returns without waiting for them. Once they are
+     * answered, the totals are stored in the queue entry, where they are used for scheduling and for choosing an output
+     * root.
+     *
+     * @param entry   tutorial the lessons belong to
+     * @param lessons lessons with resolved video links, lessons without a link count as unknown
+     * @return total bytes of the tutorial, once all requests are answered
+     */
+    Future<Long> measure(QueueEntry entry, List<LessonInfo> lessons) {
+        List<Future<Long>> requests = new ArrayList<>();
+        for (LessonInfo lesson : lessons) {
+            requests.add(pool.submit(() -> head(lesson.getLink())));
+        }
+        return collector.submit(() -> collect(entry, lessons, requests));
+    }
+
+    /**
+     * Waits for the HEAD requests of a tutorial and adds up the sizes.
+     *
+     * @return total bytes of the tutorial
+     */
+    private long collect(QueueEntry entry, List<LessonInfo> lessons, List<Future<Long>> requests)
+            throws InterruptedException {
+        Map<String, Long> lessonSizes = new LinkedHashMap<>();
+        long known = 0;
+        int missing = 0;
+        for (int i = 0; i < lessons.size(); i++) {
+            long size;
+            try {
+                size = requests.get(i).get();
+            } catch (ExecutionException e) {
+                size = -1;
+            }
+            lessonSizes.put(lessons.get(i).getID(), size);
+            if (size < 0) {
+                missing++;
+            } else {
+                known += size;
+            }
+        }
+
+        long total = known;
+        if (missing > 0 && missing < lessons.size()) {
+            total += known / (lessons.size() - missing) * missing; // estimate the rest from the known ones
+        }
+        synchronized (this) {
+            sizes.put(entry.getURL(), lessonSizes);
+            unknown += missing;
+        }
+        entry.setLessonCount(lessons.size());
+        entry.setTotalBytes(missing == lessons.size() ? -1 : total);
+        return entry.getTotalBytes();
+    }
+
+    /**
+     * @return total bytes of all measured tutorials, including estimates for videos of unknown size
+     */
+    synchronized long getTotalBytes() {
+        long total = 0;
+        for (Map<String, Long> lessonSizes : sizes.values()) {
+            long known = 0;
+            int missing = 0;
+            for (long size : lessonSizes.values()) {
+                if (size < 0) {
+                    missing++;
+                } else {
+                    known += size;
+                }
+            }
+            if (missing < lessonSizes.size()) {
+                total += known + known / (lessonSizes.size() - missing) * missing;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return a summary of the manifest for the log
+     */
+    synchronized String describe() {
+        int videos = 0;
+        for (Map<String, Long> lessonSizes : sizes.values()) {
+            videos += lessonSizes.size();
+        }
+        String summary = String.format("%d tutorials, %d videos, %.1f MB", sizes.size(), videos,
+                getTotalBytes() / (1024.0 * 1024.0));
+        return unknown == 0 ? summary : summary + " (" + unknown + " videos estimated)";
+    }
+
+    void shutdown() {
+        collector.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    /**
+     * @param link video link
+     * @return size announced by the server, or -1 if it does not tell
+     */
+    private long head(String link) throws IOException {
+        if (link == null) {
+            return -1;
+        }
+        HttpURLConnection connection = (HttpURLConnection) new URL(link).openConnection();
+        try {
+            connection.setRequestMethod("HEAD");
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            int code = connection.getResponseCode();
+            if (code / 100 != 2) {
+                log.finest(() -> "HEAD request refused with " + code + ": " + link);
+                return -1;
+            }
+            return connection.getContentLengthLong();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
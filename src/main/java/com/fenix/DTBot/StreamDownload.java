@@ -0,0 +1,785 @@
+package com.fenix.DTBot;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads a video that is served as an adaptive stream, an HLS playlist or a DASH manifest, instead of a single
+ * file.
+ * <p>
+ * The rendition with the highest bandwidth is picked. Its segments are fetched {@link #WINDOW} at a time and written
+ * out in order as soon as the next one is in, so no more than a window of segments is ever held in memory. Fragmented
+ * MP4 segments are written into the file as they are, since their concatenation is a playable MP4. MPEG-TS segments and
+ * streams whose audio is a separate track are piped through ffmpeg, which remuxes them into an MP4 without re-encoding.
+ * Without ffmpeg a transport stream is kept as it is under a <code>.ts</code> name, see {@link #getTarget(File)}, and
+ * a separate audio track is saved next to the video.
+ * <p>
+ * Encrypted streams are not supported.
+ */
+class StreamDownload {
+
+    private static final int WINDOW = 4; // segments fetched at once
+    private static final int SEGMENT_ATTEMPTS = 3; // tries per segment before the whole download fails
+    private static final long CONNECTION_WAIT = 200; // milliseconds between tries for a connection to a busy host
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern ATTRIBUTE = Pattern.compile("([A-Z0-9-]+)=(\"[^\"]*\"|[^,]*)");
+    private static final Pattern TEMPLATE = Pattern.compile(
+            "\\$(RepresentationID|Bandwidth|Number|Time)(%0(\\d+)d)?\\$");
+    private static final Pattern MP4_SEGMENT = Pattern.compile("\\.(mp4|m4s|m4v|m4a|cmfv|cmfa)$",
+            Pattern.CASE_INSENSITIVE);
+
+    private final DownloadEngine engine; // provides the segment threads and ffmpeg
+    private final URL manifest; // playlist or manifest the video link points to
+    private final int timeout; // connect and read timeout of every request in milliseconds
+    private Track video; // null until loaded
+    private Track audio; // separate audio track, null if the audio is part of the video
+    private LongConsumer progress; // told the bytes fetched so far
+    private long fetched;
+    private boolean remuxed; // whether the last download went through ffmpeg
+
+    /**
+     * A part of the stream, either a whole resource or a byte range of one.
+     */
+    private static class Segment {
+        final URL url;
+        final long offset;
+        final long length; // -1 for the whole resource
+
+        Segment(URL url, long offset, long length) {
+            this.url = url;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The segments of one rendition in playback order.
+     */
+    private static class Track {
+        final List<Segment> segments = new ArrayList<>();
+        Segment init; // initialization segment of fragmented MP4, null if there is none
+        boolean transportStream; // whether the segments are MPEG-TS rather than fragmented MP4
+    }
+
+    /**
+     * @param engine   provides the threads that fetch segments and the location of ffmpeg
+     * @param manifest link to an HLS playlist or DASH manifest
+     * @param timeout  connect and read timeout of every request in milliseconds
+     */
+    StreamDownload(DownloadEngine engine, URL manifest, int timeout) {
+        this.engine = engine;
+        this.manifest = manifest;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param link video link
+     * @return {@code true} if the link points to an HLS playlist or DASH manifest rather than a video file
+     */
+    static boolean isStream(URL link) {
+        String path = link.getPath().toLowerCase();
+        return path.endsWith(".m3u8") || path.endsWith(".mpd");
+    }
+
+    /**
+     * Fetches the playlist or manifest and picks the rendition to download.
+     *
+     * @throws IOException if it could not be fetched or describes nothing that can be downloaded
+     */
+    void load() throws IOException {
+        String text = new String(fetch(new Segment(manifest, 0, -1)), StandardCharsets.UTF_8);
+        if (manifest.getPath().toLowerCase().endsWith(".mpd") || text.trim().startsWith("<")) {
+            loadDash(text);
+        } else {
+            loadHls(manifest, text);
+        }
+    }
+
+    /**
+     * @return a summary of the picked rendition for the log
+     */
+    String describe() {
+        return video.segments.size() + (video.transportStream ? " TS" : " MP4") + " segments"
+                + (audio == null ? "" : " and " + audio.segments.size() + " audio segments");
+    }
+
+    /**
+     * @param file file the video was meant for
+     * @return file the downloaded video belongs in, which ends in <code>.ts</code> if it is a transport stream that
+     * was not remuxed
+     */
+    File getTarget(File file) {
+        if (!video.transportStream || remuxed) {
+            return file;
+        }
+        return new File(file.getParentFile(), file.getName().replaceFirst("\\.mp4$", "") + ".ts");
+    }
+
+    /**
+     * Downloads the stream into a partial file. A separate audio track is saved as an <code>.m4a</code> next to the
+     * final file if it cannot be muxed into the video.
+     *
+     * @param file     final file of the video, used to name the audio track
+     * @param partial  file to write the video to
+     * @param deadline when the transfer is given up on
+     * @param progress told the number of bytes fetched so far
+     * @return bytes fetched
+     * @throws IOException if the transfer failed, in which case the partial file is removed
+     */
+    long download(File file, File partial, long deadline, LongConsumer progress) throws IOException {
+        this.progress = progress;
+        fetched = 0;
+        String ffmpeg = video.transportStream || audio != null ? engine.getFfmpeg() : null;
+        remuxed = ffmpeg != null;
+        try {
+            if (ffmpeg != null) {
+                remux(ffmpeg, partial, deadline);
+            } else {
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(partial), BUFFER_SIZE)) {
+                    write(video, out, deadline);
+                }
+                if (audio != null) {
+                    String name = file.getName().replaceFirst("\\.mp4$", "") + ".m4a";
+                    File audioFile = new File(file.getParentFile(), name);
+                    File audioPartial = new File(audioFile.getPath() + ".part");
+                    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(audioPartial), BUFFER_SIZE)) {
+                        write(audio, out, deadline);
+                    } catch (IOException e) {
+                        //noinspection ResultOfMethodCallIgnored
+                        audioPartial.delete();
+                        throw e;
+                    }
+                    if (!audioPartial.renameTo(audioFile)) {
+                        engine.getLog().warning("Could not rename " + audioPartial.getName());
+                    }
+                    engine.getLog().warning("No ffmpeg to mux the audio track, saved it as " + name);
+                }
+            }
+            return fetched;
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            partial.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Pipes the video through ffmpeg into an MP4. A separate audio track is fetched into a temporary file first, it is
+     * much smaller than the video.
+     */
+    private void remux(String ffmpeg, File partial, long deadline) throws IOException {
+        File audioFile = audio == null ? null : new File(partial.getPath() + ".audio");
+        File errors = new File(partial.getPath() + ".log");
+        Process process = null;
+        try {
+            if (audioFile != null) {
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(audioFile), BUFFER_SIZE)) {
+                    write(audio, out, deadline);
+                }
+            }
+
+            List<String> command = new ArrayList<>(Arrays.asList(ffmpeg, "-y", "-loglevel", "error", "-i", "pipe:0"));
+            if (audioFile != null) {
+                command.addAll(Arrays.asList("-i", audioFile.getPath(), "-map", "0:v", "-map", "1:a"));
+            }
+            command.addAll(Arrays.asList("-c", "copy", "-f", "mp4", partial.getPath()));
+            process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(errors).start();
+
+            try (OutputStream pipe = new BufferedOutputStream(process.getOutputStream(), BUFFER_SIZE)) {
+                write(video, pipe, deadline);
+            } catch (IOException e) {
+                if (process.isAlive()) {
+                    throw e;
+                } // otherwise ffmpeg quit early, its exit code tells why
+            }
+            if (process.waitFor() != 0) {
+                throw new IOException("ffmpeg failed: " + new String(Files.readAllBytes(errors.toPath()),
+                        StandardCharsets.UTF_8).trim());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        } finally {
+            if (process != null) {
+                process.destroy();
+            }
+            //noinspection ResultOfMethodCallIgnored
+            errors.delete();
+            if (audioFile != null) {
+                //noinspection ResultOfMethodCallIgnored
+                audioFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes the segments of a track in order while the following ones are being fetched.
+     */
+    private void write(Track track, OutputStream out, long deadline) throws IOException {
+        if (track.init != null) {
+            written(out, fetch(track.init));
+        }
+        if (track.segments.size() == 1 && track.segments.get(0).length < 0) {
+            stream(track.segments.get(0), out, deadline); // a single file is never held in memory
+            return;
+        }
+
+        Deque<Future<byte[]>> window = new ArrayDeque<>();
+        int next = 0; // first segment not submitted yet
+        while (next < track.segments.size() || !window.isEmpty()) {
+            // one segment at a time uses the connection of the download, which is counted against the host of the
+            // manifest. more segments, and segments served from another host, need free connections to their host
+            while (next < track.segments.size() && window.size() < WINDOW) {
+                Segment segment = track.segments.get(next);
+                boolean held = !window.isEmpty() || !segment.url.getHost().equals(manifest.getHost());
+                if (held && !engine.acquireConnection(segment.url.getHost())) {
+                    break;
+                }
+                window.add(engine.getSegmentPool().submit(() -> fetchCounted(segment, held)));
+                next++;
+            }
+            if (window.isEmpty()) {
+                waitForConnection(deadline);
+                continue;
+            }
+
+            // segments still in the window on failure are left to finish, so that they give back their connections
+            written(out, getResult(window.poll()));
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Transfer too slow");
+            }
+        }
+    }
+
+    /**
+     * Waits a moment before asking for a connection to a host that has none to spare.
+     */
+    private static void waitForConnection(long deadline) throws IOException {
+        if (System.currentTimeMillis() > deadline) {
+            throw new IOException("Transfer too slow");
+        }
+        try {
+            Thread.sleep(CONNECTION_WAIT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        }
+    }
+
+    private void written(OutputStream out, byte[] data) throws IOException {
+        out.write(data);
+        fetched += data.length;
+        progress.accept(fetched);
+    }
+
+    private static byte[] getResult(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Fetches a segment and reports the outcome to the host limits of the engine.
+     *
+     * @param held whether the fetch uses a connection taken from the engine
+     */
+    private byte[] fetchCounted(Segment segment, boolean held) throws IOException {
+        boolean success = false;
+        try {
+            byte[] data = fetch(segment);
+            success = true;
+            return data;
+        } finally {
+            engine.reportConnection(segment.url.getHost(), held, success);
+        }
+    }
+
+    /**
+     * Fetches a segment into memory, retrying it a few times before giving up.
+     */
+    private byte[] fetch(Segment segment) throws IOException {
+        IOException failure = null;
+        for (int attempt = 0; attempt < SEGMENT_ATTEMPTS; attempt++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IOException("Interrupted");
+            }
+            HttpURLConnection connection = null;
+            try {
+                connection = connect(segment);
+                InputStream in = connection.getInputStream();
+                long length = connection.getContentLengthLong();
+                ByteArrayOutputStream data = new ByteArrayOutputStream(length > 0 ? (int) length : BUFFER_SIZE);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    data.write(buffer, 0, read);
+                }
+                if (length >= 0 && data.size() != length) {
+                    throw new IOException("Expected " + length + " bytes but got " + data.size());
+                }
+                return data.toByteArray();
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                if (connection != null) {
+                    connection.disconnect(); // also closes the stream
+                }
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Streams a segment straight into the output, for streams that consist of a single file.
+     */
+    private void stream(Segment segment, OutputStream out, long deadline) throws IOException {
+        HttpURLConnection connection = connect(segment);
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                fetched += read;
+                progress.accept(fetched);
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("Transfer too slow");
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection connect(Segment segment) throws IOException {
+        HttpURLConnection connection = DownloadTask.open(segment.url, timeout);
+        if (segment.length >= 0) {
+            connection.setRequestProperty("Range", "bytes=" + segment.offset + "-"
+                    + (segment.offset + segment.length - 1));
+        }
+        int status = connection.getResponseCode();
+        if (status / 100 != 2 || segment.length >= 0 && status != 206) {
+            connection.disconnect();
+            throw new IOException("Segment refused with " + status + ": " + segment.url);
+        }
+        return connection;
+    }
+
+    /* HLS */
+
+    /**
+     * Loads a master playlist by picking its variant with the highest bandwidth, or a media playlist directly.
+     */
+    private void loadHls(URL url, String text) throws IOException {
+        if (!text.startsWith("#EXTM3U")) {
+            throw new IOException("Not a playlist: " + url);
+        }
+        if (!text.contains("#EXT-X-STREAM-INF")) {
+            video = parseMediaPlaylist(url, text);
+            return;
+        }
+
+        String[] lines = text.split("\\r?\\n");
+        Map<String, URL> audioGroups = new HashMap<>(); // playlist of the default rendition by group id
+        Map<String, String> best = null;
+        URL bestURL = null;
+        long bestBandwidth = -1;
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.startsWith("#EXT-X-MEDIA:")) {
+                Map<String, String> media = parseAttributes(line);
+                String group = media.get("GROUP-ID");
+                if ("AUDIO".equals(media.get("TYPE")) && media.containsKey("URI") && group != null
+                        && ("YES".equals(media.get("DEFAULT")) || !audioGroups.containsKey(group))) {
+                    audioGroups.put(group, new URL(url, media.get("URI")));
+                }
+            } else if (line.startsWith("#EXT-X-STREAM-INF:")) {
+                Map<String, String> variant = parseAttributes(line);
+                while (++i < lines.length && (lines[i].trim().isEmpty() || lines[i].trim().startsWith("#"))) {
+                    // the URI is the next line that is not a tag
+                }
+                long bandwidth = parseLong(variant.get("BANDWIDTH"), 0);
+                if (i < lines.length && bandwidth > bestBandwidth) {
+                    best = variant;
+                    bestURL = new URL(url, lines[i].trim());
+                    bestBandwidth = bandwidth;
+                }
+            }
+        }
+        if (bestURL == null) {
+            throw new IOException("Playlist has no variants: " + url);
+        }
+
+        video = parseMediaPlaylist(bestURL, new String(fetch(new Segment(bestURL, 0, -1)), StandardCharsets.UTF_8));
+        URL audioURL = audioGroups.get(best.get("AUDIO"));
+        if (audioURL != null) {
+            audio = parseMediaPlaylist(audioURL, new String(fetch(new Segment(audioURL, 0, -1)),
+                    StandardCharsets.UTF_8));
+        }
+    }
+
+    private Track parseMediaPlaylist(URL url, String text) throws IOException {
+        Track track = new Track();
+        long rangeLength = -1; // length of the next segment if it is a byte range
+        long rangeOffset = -1; // offset of the next segment, -1 to continue after the previous one
+        long nextOffset = 0;
+        String lastURL = null;
+        for (String line : text.split("\\r?\\n")) {
+            line = line.trim();
+            if (line.startsWith("#EXT-X-KEY:")) {
+                String method = parseAttributes(line).get("METHOD");
+                if (!"NONE".equals(method)) {
+                    throw new IOException("Encrypted streams are not supported: " + method);
+                }
+            } else if (line.startsWith("#EXT-X-MAP:")) {
+                Map<String, String> map = parseAttributes(line);
+                String range = map.get("BYTERANGE");
+                long[] parsed = range == null ? new long[]{-1, 0} : parseByteRange(range);
+                track.init = new Segment(new URL(url, map.get("URI")), Math.max(parsed[1], 0), parsed[0]);
+            } else if (line.startsWith("#EXT-X-BYTERANGE:")) {
+                long[] parsed = parseByteRange(line.substring(line.indexOf(':') + 1));
+                rangeLength = parsed[0];
+                rangeOffset = parsed[1];
+            } else if (!line.isEmpty() && !line.startsWith("#")) {
+                URL segmentURL = new URL(url, line);
+                if (rangeLength >= 0) {
+                    long offset = rangeOffset >= 0 ? rangeOffset
+                            : segmentURL.toString().equals(lastURL) ? nextOffset : 0;
+                    track.segments.add(new Segment(segmentURL, offset, rangeLength));
+                    nextOffset = offset + rangeLength;
+                } else {
+                    track.segments.add(new Segment(segmentURL, 0, -1));
+                }
+                lastURL = segmentURL.toString();
+                rangeLength = -1;
+                rangeOffset = -1;
+            }
+        }
+        if (track.segments.isEmpty()) {
+            throw new IOException("Playlist has no segments: " + url);
+        }
+        track.transportStream = track.init == null
+                && !MP4_SEGMENT.matcher(track.segments.get(0).url.getPath()).find();
+        return track;
+    }
+
+    private static Map<String, String> parseAttributes(String line) {
+        Map<String, String> attributes = new HashMap<>();
+        Matcher matcher = ATTRIBUTE.matcher(line.substring(line.indexOf(':') + 1));
+        while (matcher.find()) {
+            String value = matcher.group(2);
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            attributes.put(matcher.group(1), value);
+        }
+        return attributes;
+    }
+
+    /**
+     * @param range byte range in the form <code>length[@offset]</code>
+     * @return length and offset, the offset is -1 if it is not given
+     */
+    private static long[] parseByteRange(String range) throws IOException {
+        try {
+            int at = range.indexOf('@');
+            return at < 0
+                    ? new long[]{Long.parseLong(range.trim()), -1}
+                    : new long[]{Long.parseLong(range.substring(0, at).trim()),
+                            Long.parseLong(range.substring(at + 1).trim())};
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad byte range: " + range);
+        }
+    }
+
+    /* DASH */
+
+    /**
+     * Loads the video and audio representations with the highest bandwidth from the first period of a manifest.
+     */
+    private void loadDash(String text) throws IOException {
+        Element mpd;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            Document document = factory.newDocumentBuilder().parse(new InputSource(new StringReader(text)));
+            mpd = document.getDocumentElement();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Bad manifest: " + e.getMessage());
+        }
+
+        Element period = getChild(mpd, "Period");
+        if (period == null) {
+            throw new IOException("Manifest has no period: " + manifest);
+        }
+        double duration = parseDuration(mpd.getAttribute("mediaPresentationDuration"));
+        if (duration < 0) {
+            duration = parseDuration(period.getAttribute("duration"));
+        }
+        URL base = getBaseURL(getBaseURL(manifest, mpd), period);
+
+        Element videoSet = null, videoRepresentation = null, audioSet = null, audioRepresentation = null;
+        long videoBandwidth = -1, audioBandwidth = -1;
+        for (Element set : getChildren(period, "AdaptationSet")) {
+            for (Element representation : getChildren(set, "Representation")) {
+                String type = getContentType(set, representation);
+                long bandwidth = parseLong(representation.getAttribute("bandwidth"), 0);
+                if (type.equals("video") && bandwidth > videoBandwidth) {
+                    videoSet = set;
+                    videoRepresentation = representation;
+                    videoBandwidth = bandwidth;
+                } else if (type.equals("audio") && bandwidth > audioBandwidth) {
+                    audioSet = set;
+                    audioRepresentation = representation;
+                    audioBandwidth = bandwidth;
+                }
+            }
+        }
+        if (videoRepresentation == null) {
+            throw new IOException("Manifest has no video: " + manifest);
+        }
+
+        video = getTrack(base, period, videoSet, videoRepresentation, duration);
+        if (audioRepresentation != null) {
+            audio = getTrack(base, period, audioSet, audioRepresentation, duration);
+        }
+    }
+
+    private Track getTrack(URL base, Element period, Element set, Element representation, double duration)
+            throws IOException {
+        base = getBaseURL(getBaseURL(base, set), representation);
+        Track track = new Track();
+        track.transportStream = getAttribute("mimeType", representation, set).contains("mp2t");
+        String id = representation.getAttribute("id");
+        String bandwidth = representation.getAttribute("bandwidth");
+
+        Element template = getFirstChild("SegmentTemplate", representation, set, period);
+        Element list = getFirstChild("SegmentList", representation, set, period);
+        if (template != null) {
+            String initialization = template.getAttribute("initialization");
+            if (!initialization.isEmpty()) {
+                track.init = new Segment(new URL(base, fillTemplate(initialization, id, bandwidth, 0, 0)), 0, -1);
+            }
+            String media = template.getAttribute("media");
+            long number = parseLong(template.getAttribute("startNumber"), 1);
+            long timescale = parseLong(template.getAttribute("timescale"), 1);
+            Element timeline = getChild(template, "SegmentTimeline");
+
+            if (timeline != null) {
+                long time = 0;
+                for (Element s : getChildren(timeline, "S")) {
+                    time = parseLong(s.getAttribute("t"), time);
+                    long length = parseLong(s.getAttribute("d"), 0);
+                    long repeat = parseLong(s.getAttribute("r"), 0);
+                    if (length <= 0) {
+                        throw new IOException("Bad segment timeline: " + manifest);
+                    }
+                    if (repeat < 0) { // repeats until the end of the period
+                        repeat = (long) Math.ceil((duration * timescale - time) / length) - 1;
+                    }
+                    for (long r = 0; r <= repeat; r++) {
+                        track.segments.add(new Segment(new URL(base, fillTemplate(media, id, bandwidth, number, time)),
+                                0, -1));
+                        time += length;
+                        number++;
+                    }
+                }
+            } else {
+                long length = parseLong(template.getAttribute("duration"), 0);
+                if (length <= 0 || duration < 0) {
+                    throw new IOException("Cannot count the segments of " + manifest);
+                }
+                long count = (long) Math.ceil(duration * timescale / length);
+                for (long n = 0; n < count; n++) {
+                    track.segments.add(new Segment(new URL(base, fillTemplate(media, id, bandwidth, number + n,
+                            n * length)), 0, -1));
+                }
+            }
+        } else if (list != null) {
+            Element initialization = getChild(list, "Initialization");
+            if (initialization != null) {
+                track.init = getListSegment(base, initialization.getAttribute("sourceURL"),
+                        initialization.getAttribute("range"));
+            }
+            for (Element segment : getChildren(list, "SegmentURL")) {
+                track.segments.add(getListSegment(base, segment.getAttribute("media"),
+                        segment.getAttribute("mediaRange")));
+            }
+        } else {
+            track.segments.add(new Segment(base, 0, -1)); // the representation is a single file
+        }
+
+        if (track.segments.isEmpty()) {
+            throw new IOException("Representation has no segments: " + manifest);
+        }
+        return track;
+    }
+
+    private static Segment getListSegment(URL base, String media, String range) throws IOException {
+        URL url = media.isEmpty() ? base : new URL(base, media);
+        if (range.isEmpty()) {
+            return new Segment(url, 0, -1);
+        }
+        try {
+            int dash = range.indexOf('-');
+            long first = Long.parseLong(range.substring(0, dash));
+            long last = Long.parseLong(range.substring(dash + 1));
+            return new Segment(url, first, last - first + 1);
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new IOException("Bad byte range: " + range);
+        }
+    }
+
+    /**
+     * Substitutes the identifiers of a segment template, e.g. <code>$Number%05d$</code>.
+     */
+    private static String fillTemplate(String template, String id, String bandwidth, long number, long time) {
+        Matcher matcher = TEMPLATE.matcher(template);
+        StringBuffer filled = new StringBuffer();
+        while (matcher.find()) {
+            String value;
+            switch (matcher.group(1)) {
+                case "RepresentationID":
+                    value = id;
+                    break;
+                case "Bandwidth":
+                    value = bandwidth;
+                    break;
+                case "Number":
+                    value = matcher.group(3) == null ? Long.toString(number)
+                            : String.format("%0" + matcher.group(3) + "d", number);
+                    break;
+                default:
+                    value = matcher.group(3) == null ? Long.toString(time)
+                            : String.format("%0" + matcher.group(3) + "d", time);
+            }
+            matcher.appendReplacement(filled, Matcher.quoteReplacement(value));
+        }
+        matcher.appendTail(filled);
+        return filled.toString().replace("$$", "$");
+    }
+
+    /**
+     * @return "video", "audio" or something else the stream is of no use for
+     */
+    private static String getContentType(Element set, Element representation) {
+        String type = set.getAttribute("contentType");
+        if (type.isEmpty()) {
+            type = getAttribute("mimeType", representation, set);
+        }
+        int slash = type.indexOf('/');
+        return slash < 0 ? type : type.substring(0, slash);
+    }
+
+    /**
+     * @return the attribute from the first element that has it, inheriting it like the manifest does
+     */
+    private static String getAttribute(String name, Element... elements) {
+        for (Element element : elements) {
+            if (element.hasAttribute(name)) {
+                return element.getAttribute(name);
+            }
+        }
+        return "";
+    }
+
+    private static URL getBaseURL(URL base, Element element) throws IOException {
+        Element child = getChild(element, "BaseURL");
+        return child == null ? base : new URL(base, child.getTextContent().trim());
+    }
+
+    private static Element getFirstChild(String name, Element... elements) {
+        for (Element element : elements) {
+            Element child = getChild(element, name);
+            if (child != null) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static Element getChild(Element element, String name) {
+        List<Element> children = getChildren(element, name);
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    private static List<Element> getChildren(Element element, String name) {
+        List<Element> children = new ArrayList<>();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && name.equals(child.getLocalName())) {
+                children.add((Element) child);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Parses an XML schema duration, which unlike {@link java.time.Duration} may have years and months. Those are
+     * counted from the epoch, which is as good as any start for a video.
+     *
+     * @param value duration such as <code>PT4M12.5S</code> or <code>P0Y0M0DT1H</code>
+     * @return duration in seconds, or -1 if it is missing or not understood
+     */
+    private static double parseDuration(String value) {
+        if (value.isEmpty()) {
+            return -1;
+        }
+        try {
+            return DatatypeFactory.newInstance().newDuration(value.trim()).getTimeInMillis(new Date(0)) / 1000.0;
+        } catch (DatatypeConfigurationException | IllegalArgumentException | UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.fenix.DTBot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Decides in which order the tutorials of the queue are downloaded. Tutorials are ordered by priority, then by
+ * deadline and, if shortest-job-first is enabled, by their size so that many small tutorials are finished before a
+ * long series holds up the queue. Ties fall back to the order of the queue file.
+ */
+class TutorialScheduler implements TutorialSource {
+
+    private final List<QueueEntry> pending; // tutorials that have not been handed out yet
+    private final List<QueueEntry> deferred = new ArrayList<>(); // handed out again once pending is empty
+    private final Comparator<QueueEntry> order;
+    private final int size; // tutorials in the queue
+
+    /**
+     * @param entries          tutorials to schedule
+     * @param shortestJobFirst whether to favor tutorials with less lessons and bytes
+     */
+    TutorialScheduler(Collection<QueueEntry> entries, boolean shortestJobFirst) {
+        pending = new ArrayList<>(entries);
+        size = entries.size();
+
+        Comparator<QueueEntry> comparator = Comparator
+                .comparing(QueueEntry::getPriority, Comparator.reverseOrder())
+                .thenComparing(QueueEntry::getDeadline, Comparator.nullsLast(Comparator.naturalOrder()));
+        if (shortestJobFirst) {
+            comparator = comparator.thenComparing(TutorialScheduler::compareSize);
+        }
+        order = comparator.thenComparingInt(QueueEntry::getOrder);
+    }
+
+    /**
+     * Compares two tutorials by their size. Tutorials with a known byte count come first, ordered by bytes, since they
+     * reflect the actual amount of work. Tutorials of which only the lesson count is known follow, ordered by lessons,
+     * and tutorials of unknown size come last. Each tutorial falls into one of these tiers on its own, so the order is
+     * transitive, as the contract of a {@code Comparator} demands of any priority queue built on it. {@link #next()}
+     * relies on that as well: with a cycle, the tutorial it picks would depend on the order of the pending list.
+     */
+    private static int compareSize(QueueEntry a, QueueEntry b) {
+        int tier = Integer.compare(getSizeTier(a), getSizeTier(b));
+        if (tier != 0) {
+            return tier;
+        }
+        switch (getSizeTier(a)) {
+            case 0:
+                return Long.compare(a.getTotalBytes(), b.getTotalBytes());
+            case 1:
+                return Integer.compare(a.getLessonCount(), b.getLessonCount());
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return 0 if the bytes of the tutorial are known, 1 if only its lessons are, 2 otherwise
+     */
+    private static int getSizeTier(QueueEntry entry) {
+        return entry.getTotalBytes() >= 0 ? 0 : entry.getLessonCount() >= 0 ? 1 : 2;
+    }
+
+    /**
+     * Puts a tutorial back into the queue at its regular position, e.g. after the bot holding it went away.
+     *
+     * @param entry tutorial to add
+     */
+    synchronized void add(QueueEntry entry) {
+        pending.add(entry);
+    }
+
+    /**
+     * Puts a tutorial that cannot be downloaded right now back into the queue. Deferred tutorials are handed out again
+     * in the order they were deferred after all other tutorials.
+     *
+     * @param entry tutorial to defer
+     */
+    @Override
+    public synchronized void defer(QueueEntry entry) {
+        deferred.add(entry);
+    }
+
+    @Override
+    public void completed(QueueEntry entry) {
+        // nothing to keep track of locally
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        // nothing was handed out to anyone else
+    }
+
+    /**
+     * Hands out the tutorial that should be downloaded next. The order is evaluated on every call so that metadata
+     * gathered in the meantime is taken into account.
+     *
+     * @return next tutorial, or {@code null} if all tutorials have been handed out
+     */
+    @Override
+    public synchronized QueueEntry next() {
+        if (pending.isEmpty()) {
+            return deferred.isEmpty() ? null : deferred.remove(0);
+        }
+        QueueEntry best = pending.get(0);
+        for (QueueEntry entry : pending) {
+            if (order.compare(entry, best) < 0) {
+                best = entry;
+            }
+        }
+        pending.remove(best);
+        return best;
+    }
+}
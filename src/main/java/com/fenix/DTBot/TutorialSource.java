@@ -0,0 +1,44 @@
+package com.fenix.DTBot;
+
+import java.io.IOException;
+
+/**
+ * Hands out the tutorials a bot works on, either from the local queue file or from a {@link Coordinator} shared with
+ * other bots.
+ */
+interface TutorialSource {
+
+    /**
+     * Hands out the tutorial that should be downloaded next, waiting if other bots still hold tutorials that may come
+     * back.
+     *
+     * @return next tutorial, or {@code null} if there is nothing left to do
+     * @throws IOException if the source could not be reached
+     */
+    QueueEntry next() throws IOException;
+
+    /**
+     * Gives back a tutorial that cannot be downloaded right now so that it is handed out again later.
+     *
+     * @param entry tutorial obtained from {@link #next()}
+     */
+    void defer(QueueEntry entry);
+
+    /**
+     * Reports that a tutorial is finished, either because all of its downloads are done or because there was nothing
+     * to download.
+     *
+     * @param entry tutorial obtained from {@link #next()}
+     */
+    void completed(QueueEntry entry);
+
+    /**
+     * @return total number of tutorials, used for progress
+     */
+    int size();
+
+    /**
+     * Gives back every tutorial that was handed out but not completed, e.g. because the bot stopped early.
+     */
+    void close();
+}
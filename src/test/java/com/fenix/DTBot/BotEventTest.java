@@ -0,0 +1,61 @@
+package com.fenix.DTBot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BotEventTest {
+
+    /**
+     * @return the JSON of the event without its time, which differs on every run
+     */
+    private static String withoutTime(BotEvent event) {
+        String json = event.toJSON();
+        assertTrue(json, json.matches("\\{\"time\":\\d+,.*}"));
+        return "{" + json.substring(json.indexOf(',') + 1);
+    }
+
+    private static String escaped(String value) {
+        StringBuilder json = new StringBuilder();
+        BotEvent.field(json, "v", value);
+        return json.toString();
+    }
+
+    @Test
+    public void writesTypeAndFields() {
+        assertEquals("{\"type\":\"TutorialScraped\",\"url\":\"http://example.com/t\",\"lessons\":12,\"queued\":10,"
+                + "\"millis\":3500}", withoutTime(new BotEvent.TutorialScraped("http://example.com/t", 12, 10, 3500)));
+    }
+
+    @Test
+    public void writesNullAsLiteral() {
+        assertEquals(",\"v\":null", escaped(null));
+        assertEquals("{\"type\":\"TutorialStarted\",\"url\":\"u\",\"name\":null}",
+                withoutTime(new BotEvent.TutorialStarted("u", null)));
+    }
+
+    @Test
+    public void escapesQuotesAndBackslashes() {
+        assertEquals(",\"v\":\"C:\\\\Videos\\\\\\\"Intro\\\".mp4\"", escaped("C:\\Videos\\\"Intro\".mp4"));
+    }
+
+    @Test
+    public void escapesControlCharacters() {
+        assertEquals(",\"v\":\"a\\nb\\r\\tc\\u0000\\u001f\"", escaped("a\nb\r\tc\u0000\u001f"));
+    }
+
+    @Test
+    public void keepsOtherCharacters() {
+        String text = "Kapitel 1 \u2013 Einf\u00fchrung / \u00ff \u007f";
+        assertEquals(",\"v\":\"" + text + "\"", escaped(text));
+    }
+
+    @Test
+    public void isASingleLine() {
+        String json = new BotEvent.DownloadFailed("01 - Intro.mp4", "cdn.example.com",
+                "java.io.IOException: refused\nby server", 2, true).toJSON();
+        assertEquals(-1, json.indexOf('\n'));
+        assertTrue(json, json.endsWith(",\"permanent\":true}"));
+    }
+}
@@ -0,0 +1,131 @@
+package com.fenix.DTBot;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+
+public class CoordinatorTest {
+
+    private static final String FIRST = "http://example.com/tutorial/1";
+    private static final String SECOND = "http://example.com/tutorial/2 priority=-1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void quiet() {
+        Logger.getLogger(Coordinator.class.getName()).setUseParentHandlers(false);
+    }
+
+    private Coordinator coordinator(String... lines) throws IOException {
+        File queue = folder.newFile();
+        Files.write(queue.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return new Coordinator(queue, false);
+    }
+
+    private static String send(Coordinator coordinator, String request) {
+        return coordinator.respond(request.split(" "));
+    }
+
+    @Test
+    public void leasesUntilEveryTutorialIsCompleted() throws IOException {
+        Coordinator coordinator = coordinator(SECOND, "# comment", "", FIRST);
+        assertEquals("JOB 1 2 " + FIRST, send(coordinator, "LEASE a"));
+        assertEquals("JOB 0 2 " + SECOND, send(coordinator, "LEASE b"));
+        assertEquals("WAIT", send(coordinator, "LEASE c"));
+        assertEquals("OK", send(coordinator, "COMPLETE a 1"));
+        assertEquals("WAIT", send(coordinator, "LEASE c"));
+        assertEquals("OK", send(coordinator, "COMPLETE b 0"));
+        assertEquals("DONE", send(coordinator, "LEASE c"));
+    }
+
+    @Test
+    public void skipsBadQueueLines() throws IOException {
+        Coordinator coordinator = coordinator(FIRST + " speed=2", FIRST);
+        assertEquals("JOB 0 1 " + FIRST, send(coordinator, "LEASE a"));
+    }
+
+    @Test
+    public void onlyTheLeaseHolderIsAnswered() throws IOException {
+        Coordinator coordinator = coordinator(FIRST);
+        send(coordinator, "LEASE a");
+        assertEquals("OK", send(coordinator, "HEARTBEAT a 0"));
+        assertEquals("LOST", send(coordinator, "HEARTBEAT b 0"));
+        assertEquals("LOST", send(coordinator, "COMPLETE b 0"));
+        assertEquals("LOST", send(coordinator, "HEARTBEAT a 1"));
+        assertEquals("LOST", send(coordinator, "HEARTBEAT a -1"));
+        assertEquals("LOST", send(coordinator, "HEARTBEAT a x"));
+        assertEquals("OK", send(coordinator, "COMPLETE a 0"));
+        assertEquals("LOST", send(coordinator, "COMPLETE a 0"));
+    }
+
+    @Test
+    public void rejectsMalformedRequests() throws IOException {
+        Coordinator coordinator = coordinator(FIRST);
+        assertEquals("ERROR", send(coordinator, "LEASE"));
+        assertEquals("ERROR", send(coordinator, "HEARTBEAT a"));
+        assertEquals("ERROR", send(coordinator, "RELEASE"));
+        assertEquals("ERROR", send(coordinator, "HELLO a 0"));
+        assertEquals("JOB 0 1 " + FIRST, send(coordinator, "LEASE a"));
+    }
+
+    @Test
+    public void releasedTutorialIsHandedOutAfterTheOthers() throws IOException {
+        Coordinator coordinator = coordinator(FIRST, SECOND);
+        assertEquals("JOB 0 2 " + FIRST, send(coordinator, "LEASE a"));
+        assertEquals("OK", send(coordinator, "RELEASE a 0"));
+        assertEquals("LOST", send(coordinator, "HEARTBEAT a 0"));
+        assertEquals("JOB 1 2 " + SECOND, send(coordinator, "LEASE b"));
+        assertEquals("JOB 0 2 " + FIRST, send(coordinator, "LEASE a"));
+    }
+
+    @Test
+    public void givesUpOnTutorialReleasedTooOften() throws IOException {
+        Coordinator coordinator = coordinator(FIRST);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("JOB 0 1 " + FIRST, send(coordinator, "LEASE a"));
+            assertEquals("OK", send(coordinator, "RELEASE a 0"));
+        }
+        assertEquals("DONE", send(coordinator, "LEASE a"));
+    }
+
+    @Test
+    public void heartbeatsKeepTheLease() throws IOException {
+        Coordinator coordinator = coordinator(FIRST);
+        send(coordinator, "LEASE a");
+        coordinator.reap(System.currentTimeMillis() + Coordinator.LEASE_TIMEOUT / 2);
+        assertEquals("OK", send(coordinator, "HEARTBEAT a 0"));
+        assertEquals("WAIT", send(coordinator, "LEASE b"));
+    }
+
+    @Test
+    public void expiredLeaseIsResumedByTheNextBot() throws IOException {
+        Coordinator coordinator = coordinator(FIRST, SECOND);
+        send(coordinator, "LEASE a");
+        coordinator.reap(System.currentTimeMillis() + Coordinator.LEASE_TIMEOUT + 1);
+        assertEquals("LOST", send(coordinator, "HEARTBEAT a 0"));
+        // taken back at its regular position, ahead of the second tutorial
+        assertEquals("JOB 0 2 " + FIRST + " resume=true", send(coordinator, "LEASE b"));
+        assertEquals("OK", send(coordinator, "COMPLETE b 0"));
+    }
+
+    @Test
+    public void givesUpOnTutorialThatKeepsExpiring() throws IOException {
+        Coordinator coordinator = coordinator(FIRST);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("JOB", send(coordinator, "LEASE a").substring(0, 3));
+            coordinator.reap(System.currentTimeMillis() + Coordinator.LEASE_TIMEOUT + 1);
+        }
+        assertEquals("DONE", send(coordinator, "LEASE a"));
+    }
+}
@@ -0,0 +1,166 @@
+package com.fenix.DTBot;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadEngineTest {
+
+    private static final String TUTORIAL = "http://example.com/tutorial/1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Logger log = Logger.getAnonymousLogger();
+    private HttpServer server;
+    private EventLog events;
+    private File deadLetters;
+
+    @Before
+    public void setUp() throws IOException {
+        log.setUseParentHandlers(false);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/broken", exchange -> {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.createContext("/video", exchange -> {
+            byte[] body = new byte[4096];
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        events = new EventLog(folder.newFile("events.jsonl"));
+        deadLetters = new File(folder.getRoot(), "failed.txt");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        events.close();
+    }
+
+    private String link(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * Creates a download that has only its last attempt left.
+     */
+    private DownloadTask lastAttempt(DownloadEngine engine, String link, File root) throws IOException {
+        LessonInfo lesson = new LessonInfo("Intro", "01", "4711", link);
+        DownloadTask task = new DownloadTask(engine, lesson, TUTORIAL, new File(root, lesson.getFileName()), root);
+        for (int i = 1; i < DownloadEngine.MAX_ATTEMPTS; i++) {
+            task.nextAttempt();
+        }
+        return task;
+    }
+
+    @Test
+    public void backoffDoublesWithinBounds() throws InterruptedException {
+        DownloadEngine engine = new DownloadEngine(1, new OutputRoots(), null, events, log);
+        long full = 2000;
+        for (int failures = 0; failures < 40; failures++) {
+            long delay = engine.getBackoff(failures);
+            assertTrue("failure " + failures + ": " + delay, delay >= full / 2 && delay <= full);
+            full = Math.min(full * 2, 5 * 60 * 1000);
+        }
+        engine.awaitCompletion();
+    }
+
+    @Test
+    public void failedDownloadBecomesQueueLine() throws Exception {
+        OutputRoots roots = new OutputRoots();
+        File root = folder.newFolder("out");
+        roots.add(root);
+        DownloadEngine engine = new DownloadEngine(1, roots, deadLetters, events, log);
+        engine.submit(lastAttempt(engine, link("/broken"), root));
+        engine.awaitCompletion();
+
+        List<String> lines = Files.readAllLines(deadLetters.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("# 01 - Intro.mp4 ("));
+        assertTrue(lines.get(0).contains("503"));
+        assertNull(QueueEntry.parse(lines.get(0), 0));
+
+        QueueEntry entry = QueueEntry.parse(lines.get(1), 1);
+        assertEquals(TUTORIAL, entry.getURL());
+        assertEquals(Collections.singleton("4711"), entry.getLessonIDs());
+        assertFalse(new File(root, "01 - Intro.mp4").exists());
+        assertFalse(new File(root, "01 - Intro.mp4.part").exists());
+    }
+
+    @Test
+    public void downloadRefusedForSpaceIsDeadLettered() throws Exception {
+        OutputRoots roots = new OutputRoots();
+        File root = new File(folder.newFolder("full").getPath()) {
+            @Override
+            public long getUsableSpace() {
+                return 0;
+            }
+        };
+        roots.add(root);
+        DownloadEngine engine = new DownloadEngine(1, roots, deadLetters, events, log);
+        engine.submit(lastAttempt(engine, link("/video"), root));
+        engine.awaitCompletion();
+
+        List<String> lines = Files.readAllLines(deadLetters.toPath(), StandardCharsets.UTF_8);
+        assertEquals("# 01 - Intro.mp4 (Not enough space for video)", lines.get(0));
+        assertEquals(TUTORIAL + " lessons=4711", lines.get(1));
+    }
+
+    @Test
+    public void downloadSucceeds() throws Exception {
+        OutputRoots roots = new OutputRoots();
+        File root = folder.newFolder("out");
+        roots.add(root);
+        DownloadEngine engine = new DownloadEngine(1, roots, deadLetters, events, log);
+        boolean[] done = new boolean[1];
+        engine.submit(lastAttempt(engine, link("/video"), root));
+        engine.whenDone(TUTORIAL, () -> done[0] = true);
+        engine.awaitCompletion();
+
+        assertTrue(done[0]);
+        assertEquals(4096, new File(root, "01 - Intro.mp4").length());
+        assertEquals(4096, engine.getTransferred());
+        assertFalse(deadLetters.exists());
+    }
+
+    @Test
+    public void hostConnectionsAreLimitedAndPausedOnFailure() throws InterruptedException {
+        DownloadEngine engine = new DownloadEngine(1, new OutputRoots(), null, events, log);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(engine.acquireConnection("cdn.example.com"));
+        }
+        assertFalse(engine.acquireConnection("cdn.example.com"));
+        assertTrue(engine.acquireConnection("other.example.com")); // limits are per host
+
+        engine.reportConnection("cdn.example.com", true, true);
+        assertTrue(engine.acquireConnection("cdn.example.com"));
+
+        engine.reportConnection("cdn.example.com", true, false);
+        assertFalse(engine.acquireConnection("cdn.example.com")); // paused after the failure
+        engine.awaitCompletion();
+    }
+}
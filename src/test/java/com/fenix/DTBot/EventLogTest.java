@@ -0,0 +1,88 @@
+package com.fenix.DTBot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> read(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void writesOneLinePerEvent() throws IOException {
+        File file = new File(folder.getRoot(), "logs/events.jsonl");
+        EventLog events = new EventLog(file);
+        events.post(new BotEvent.TutorialStarted("http://example.com/1", "One"));
+        events.post(new BotEvent.TutorialStarted("http://example.com/2", "Two\nLines"));
+        events.close();
+
+        List<String> lines = read(file);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).endsWith("\"name\":\"One\"}"));
+        assertTrue(lines.get(1), lines.get(1).endsWith("\"name\":\"Two\\nLines\"}"));
+        assertEquals(0, events.getDropped());
+    }
+
+    @Test
+    public void eachOpenLogClaimsItsOwnName() throws IOException {
+        File file = new File(folder.getRoot(), "events.jsonl");
+        List<EventLog> logs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            EventLog events = new EventLog(file);
+            events.post(new BotEvent.TutorialStarted("http://example.com/" + i, null));
+            logs.add(events);
+        }
+        EventLog extra = new EventLog(file); // every name is taken
+        extra.post(new BotEvent.TutorialStarted("http://example.com/extra", null));
+        assertEquals(1, extra.getDropped());
+        extra.close();
+        for (EventLog events : logs) {
+            events.close();
+        }
+
+        assertEquals(1, read(file).size());
+        for (int i = 1; i < 4; i++) {
+            List<String> lines = read(new File(folder.getRoot(), "events-" + i + ".jsonl"));
+            assertEquals(1, lines.size());
+            assertTrue(lines.get(0), lines.get(0).contains("\"url\":\"http://example.com/" + i + "\""));
+        }
+        assertFalse(new File(folder.getRoot(), "events-4.jsonl").exists());
+    }
+
+    @Test
+    public void nameIsFreeAgainAfterClose() throws IOException {
+        File file = new File(folder.getRoot(), "events.jsonl");
+        EventLog first = new EventLog(file);
+        first.close();
+        EventLog second = new EventLog(file);
+        second.post(new BotEvent.TutorialStarted("http://example.com/1", null));
+        second.close();
+
+        assertEquals(1, read(file).size());
+        assertFalse(new File(folder.getRoot(), "events-1.jsonl").exists());
+    }
+
+    @Test
+    public void dropsEventsAfterClose() {
+        EventLog events = new EventLog(new File(folder.getRoot(), "events.jsonl"));
+        events.close();
+        events.post(new BotEvent.TutorialStarted("http://example.com/1", null));
+        assertEquals(1, events.getDropped());
+    }
+}
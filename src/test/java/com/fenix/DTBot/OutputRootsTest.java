@@ -0,0 +1,128 @@
+package com.fenix.DTBot;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OutputRootsTest {
+
+    private static final long MARGIN = 64L * 1024 * 1024;
+    private static final String TUTORIAL = "http://example.com/tutorial/1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private OutputRoots roots;
+    private Disk small;
+    private Disk large;
+
+    /**
+     * Root with a fixed amount of free space, so that other processes writing to the disk do not affect the tests.
+     */
+    private static class Disk extends File {
+        private final long usable;
+
+        Disk(File dir, long usable) {
+            super(dir.getPath());
+            this.usable = usable;
+        }
+
+        @Override
+        public long getUsableSpace() {
+            return usable;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        small = new Disk(folder.newFolder("small"), MARGIN + 1000);
+        large = new Disk(folder.newFolder("large"), MARGIN + 5000);
+        roots = new OutputRoots();
+        roots.add(small);
+        roots.add(large);
+    }
+
+    @Test
+    public void findsExistingTutorialOnAnyRoot() {
+        assertNull(roots.find("Tutorial"));
+        assertTrue(new File(large, "Tutorial").mkdir());
+        assertEquals(new File(large, "Tutorial"), roots.find("Tutorial"));
+    }
+
+    @Test
+    public void keepsSafetyMargin() {
+        assertEquals(1000, roots.getAvailable(small));
+        assertNull(roots.place(TUTORIAL, 6000));
+        assertFalse(roots.reserve(large, 5001));
+        assertEquals(5000, roots.getAvailable(large));
+    }
+
+    @Test
+    public void placesOnRootWithLeastWritesThenMostSpace() {
+        assertSame(large, roots.place(TUTORIAL, -1));
+        assertTrue(roots.reserve(large, 100));
+        assertSame(small, roots.place("http://example.com/tutorial/2", 100));
+        assertSame(large, roots.place("http://example.com/tutorial/3", 2000)); // does not fit on the small root
+    }
+
+    @Test
+    public void holdsPlacedSizeUntilUnplaced() {
+        assertSame(large, roots.place(TUTORIAL, 3000));
+        assertEquals(2000, roots.getAvailable(large));
+        roots.hold(TUTORIAL, large, 500);
+        assertEquals(1500, roots.getAvailable(large));
+        roots.hold(TUTORIAL, small, 500); // the tutorial is not on this root
+        assertEquals(1000, roots.getAvailable(small));
+        roots.unplace(TUTORIAL);
+        assertEquals(5000, roots.getAvailable(large));
+    }
+
+    @Test
+    public void placingAgainReplacesHeldSpace() {
+        assertSame(large, roots.place(TUTORIAL, 3000));
+        assertSame(large, roots.place(TUTORIAL, 4000));
+        assertEquals(1000, roots.getAvailable(large));
+    }
+
+    @Test
+    public void downloadsReserveOutOfPlacement() {
+        roots.place(TUTORIAL, 3000);
+        assertTrue(roots.reserve(large, 1000, TUTORIAL));
+        assertEquals(2000, roots.getAvailable(large)); // nothing was reserved twice
+        assertTrue(roots.reserve(large, 2500, TUTORIAL)); // 2000 held, 500 on top
+        assertEquals(1500, roots.getAvailable(large));
+
+        roots.release(large, 1000);
+        roots.release(large, 2500);
+        assertEquals(5000, roots.getAvailable(large));
+        roots.unplace(TUTORIAL);
+        assertEquals(5000, roots.getAvailable(large));
+    }
+
+    @Test
+    public void refusedReservationLeavesNothingBehind() {
+        roots.place(TUTORIAL, 1000);
+        assertFalse(roots.reserve(large, 6001, TUTORIAL));
+        assertEquals(4000, roots.getAvailable(large));
+        assertFalse(roots.reserve(small, 1001, TUTORIAL)); // the placement is on another root
+        assertEquals(1000, roots.getAvailable(small));
+    }
+
+    @Test
+    public void unknownSizeReservesNothing() {
+        assertTrue(roots.reserve(small, -1));
+        assertEquals(1000, roots.getAvailable(small));
+        roots.release(small, -1);
+        assertEquals(1000, roots.getAvailable(small));
+    }
+}
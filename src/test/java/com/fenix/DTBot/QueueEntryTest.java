@@ -0,0 +1,79 @@
+package com.fenix.DTBot;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueueEntryTest {
+
+    private static final String URL = "http://www.digitaltutors.com/tutorial/539-Beginners-Guide-to-3ds-Max";
+
+    @Test
+    public void ignoresBlankLinesAndComments() {
+        assertNull(QueueEntry.parse("", 0));
+        assertNull(QueueEntry.parse("   \t", 0));
+        assertNull(QueueEntry.parse("# " + URL, 0));
+        assertNull(QueueEntry.parse("  #" + URL, 0));
+    }
+
+    @Test
+    public void parsesPlainURL() {
+        QueueEntry entry = QueueEntry.parse("  " + URL + "  ", 3);
+        assertEquals(URL, entry.getURL());
+        assertEquals(URL, entry.getLine());
+        assertEquals(3, entry.getOrder());
+        assertEquals(0, entry.getPriority());
+        assertNull(entry.getDeadline());
+        assertNull(entry.getLessonIDs());
+        assertFalse(entry.isResume());
+        assertEquals(-1, entry.getLessonCount());
+        assertEquals(-1, entry.getTotalBytes());
+    }
+
+    @Test
+    public void parsesAnnotations() {
+        QueueEntry entry = QueueEntry.parse(URL + "\tPriority=-2  deadline=2015-08-01 lessons=7,3,7 resume=false", 0);
+        assertEquals(-2, entry.getPriority());
+        assertEquals(LocalDate.of(2015, 8, 1), entry.getDeadline());
+        assertEquals(Arrays.asList("7", "3"), new ArrayList<>(entry.getLessonIDs()));
+        assertTrue(entry.isResume()); // a lesson list always allows an existing folder
+    }
+
+    @Test
+    public void parsesResume() {
+        assertTrue(QueueEntry.parse(URL + " resume=true", 0).isResume());
+        assertFalse(QueueEntry.parse(URL + " resume=yes", 0).isResume());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownAnnotation() {
+        QueueEntry.parse(URL + " speed=2", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTokenWithoutValue() {
+        QueueEntry.parse(URL + " priority", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTokenWithoutKey() {
+        QueueEntry.parse(URL + " =2", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBadPriority() {
+        QueueEntry.parse(URL + " priority=high", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBadDeadline() {
+        QueueEntry.parse(URL + " deadline=2015-13-01", 0);
+    }
+}
@@ -0,0 +1,98 @@
+package com.fenix.DTBot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueueStreamTest {
+
+    private static final String TUTORIAL = "http://www.digitaltutors.com/tutorial/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private QueueStream stream(List<String> lines) throws IOException {
+        File queue = folder.newFile();
+        Files.write(queue.toPath(), lines, StandardCharsets.UTF_8);
+        Logger log = Logger.getAnonymousLogger();
+        log.setUseParentHandlers(false);
+        return new QueueStream(queue, url -> url.startsWith(TUTORIAL), log);
+    }
+
+    private static List<String> drain(QueueStream stream) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (QueueEntry entry = stream.next(); entry != null; entry = stream.next()) {
+            lines.add(entry.getLine());
+        }
+        return lines;
+    }
+
+    @Test
+    public void setKeepsEveryValueOnce() {
+        QueueStream.LongHashSet set = new QueueStream.LongHashSet();
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        for (long i = 1; i <= 10000; i++) {
+            assertTrue(set.add(i << 32)); // all share the low bits, so they land in the same slot first
+            assertTrue(set.add(-i));
+        }
+        for (long i = 1; i <= 10000; i++) {
+            assertFalse(set.add(i << 32));
+            assertFalse(set.add(-i));
+        }
+        assertTrue(set.add(10001L << 32));
+    }
+
+    @Test
+    public void handsOutLinesInFileOrder() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add(TUTORIAL + i);
+        }
+        QueueStream stream = stream(lines);
+        assertEquals(1000, stream.size());
+        assertEquals(lines, drain(stream));
+        stream.close();
+    }
+
+    @Test
+    public void dropsRepeatedBadAndForeignLines() throws IOException {
+        QueueStream stream = stream(Arrays.asList(
+                "# comment",
+                TUTORIAL + "1",
+                "",
+                "  " + TUTORIAL + "1  ",
+                TUTORIAL + "1 lessons=3",
+                TUTORIAL + "1 lessons=3 priority=2",
+                TUTORIAL + "2 speed=2",
+                "http://example.com/tutorial/3",
+                TUTORIAL + "4"));
+        assertEquals(7, stream.size()); // counted before reading
+        assertEquals(Arrays.asList(TUTORIAL + "1", TUTORIAL + "1 lessons=3", TUTORIAL + "4"), drain(stream));
+        assertEquals(3, stream.size());
+    }
+
+    @Test
+    public void handsOutDeferredTutorialsAfterTheFile() throws IOException {
+        QueueStream stream = stream(Arrays.asList(TUTORIAL + "1", TUTORIAL + "2"));
+        QueueEntry first = stream.next();
+        stream.defer(first);
+        assertEquals(TUTORIAL + "2", stream.next().getLine());
+        assertEquals(first, stream.next());
+        assertNull(stream.next());
+    }
+}
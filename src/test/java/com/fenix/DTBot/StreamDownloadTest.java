@@ -0,0 +1,299 @@
+package com.fenix.DTBot;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StreamDownloadTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, String> files = new HashMap<>(); // served by path
+    private HttpServer server;
+    private EventLog events;
+    private DownloadEngine engine;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            String body = files.get(exchange.getRequestURI().getPath());
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            byte[] data = body.getBytes(StandardCharsets.UTF_8);
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null) {
+                String[] bounds = range.substring("bytes=".length()).split("-");
+                data = Arrays.copyOfRange(data, Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]) + 1);
+                status = 206;
+            }
+            exchange.sendResponseHeaders(status, data.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(data);
+            }
+        });
+        server.start();
+
+        Logger log = Logger.getAnonymousLogger();
+        log.setUseParentHandlers(false);
+        events = new EventLog(folder.newFile("events.jsonl"));
+        engine = new DownloadEngine(2, new OutputRoots(), null, events, log);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        engine.awaitCompletion();
+        events.close();
+        server.stop(0);
+    }
+
+    /**
+     * @return link to a served file on localhost
+     */
+    private String local(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * @return link to a served file under another host name than the manifest
+     */
+    private String remote(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private StreamDownload load(String path) throws IOException {
+        StreamDownload stream = new StreamDownload(engine, new URL(local(path)), 5000);
+        stream.load();
+        return stream;
+    }
+
+    /**
+     * Downloads a stream without ffmpeg and returns what was written for the video.
+     */
+    private String download(StreamDownload stream, File file) throws IOException {
+        File partial = new File(file.getPath() + ".part");
+        stream.download(file, partial, System.currentTimeMillis() + 60000, written -> {
+        });
+        return new String(Files.readAllBytes(partial.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static String lines(String... lines) {
+        return String.join("\n", lines) + "\n";
+    }
+
+    @Test
+    public void recognizesStreams() throws IOException {
+        assertTrue(StreamDownload.isStream(new URL("http://example.com/v/master.M3U8?token=1")));
+        assertTrue(StreamDownload.isStream(new URL("http://example.com/v/manifest.mpd")));
+        assertFalse(StreamDownload.isStream(new URL("http://example.com/v/video.mp4?list=a.m3u8")));
+    }
+
+    @Test
+    public void picksHlsVariantWithHighestBandwidth() throws IOException {
+        files.put("/hls/master.m3u8", lines("#EXTM3U",
+                "#EXT-X-STREAM-INF:BANDWIDTH=500000,CODECS=\"avc1.4d401f,mp4a.40.2\"",
+                "low/index.m3u8",
+                "#EXT-X-STREAM-INF:BANDWIDTH=2000000,RESOLUTION=1280x720",
+                "",
+                "high/index.m3u8"));
+        files.put("/hls/high/index.m3u8", lines("#EXTM3U",
+                "#EXT-X-MAP:URI=\"init.mp4\"",
+                "#EXTINF:4.0,",
+                "1.m4s",
+                "#EXTINF:4.0,",
+                remote("/hls/high/2.m4s"),
+                "#EXT-X-ENDLIST"));
+        files.put("/hls/high/init.mp4", "[init]");
+        files.put("/hls/high/1.m4s", "[1]");
+        files.put("/hls/high/2.m4s", "[2]");
+
+        StreamDownload stream = load("/hls/master.m3u8");
+        assertEquals("2 MP4 segments", stream.describe());
+        File file = new File(folder.getRoot(), "01 - Intro.mp4");
+        assertEquals("[init][1][2]", download(stream, file));
+        assertEquals(file, stream.getTarget(file));
+    }
+
+    @Test
+    public void keepsTransportStreamWithoutFfmpeg() throws IOException {
+        files.put("/ts/index.m3u8", lines("#EXTM3U", "#EXTINF:10,", "a.ts", "#EXTINF:10,", "b.ts"));
+        files.put("/ts/a.ts", "[a]");
+        files.put("/ts/b.ts", "[b]");
+
+        StreamDownload stream = load("/ts/index.m3u8");
+        assertEquals("2 TS segments", stream.describe());
+        File file = new File(folder.getRoot(), "01 - Intro.mp4");
+        assertEquals("[a][b]", download(stream, file));
+        assertEquals(new File(folder.getRoot(), "01 - Intro.ts"), stream.getTarget(file));
+    }
+
+    @Test
+    public void followsHlsByteRanges() throws IOException {
+        files.put("/range/index.m3u8", lines("#EXTM3U",
+                "#EXT-X-MAP:URI=\"all.mp4\",BYTERANGE=\"4@0\"",
+                "#EXT-X-BYTERANGE:4@4",
+                "all.mp4",
+                "#EXT-X-BYTERANGE:4",
+                "all.mp4",
+                "#EXT-X-BYTERANGE:2@1",
+                "all.mp4"));
+        files.put("/range/all.mp4", "INITSEG1SEG2");
+
+        StreamDownload stream = load("/range/index.m3u8");
+        assertEquals("3 MP4 segments", stream.describe());
+        assertEquals("INITSEG1SEG2NI", download(stream, new File(folder.getRoot(), "01 - Intro.mp4")));
+    }
+
+    @Test
+    public void savesSeparateHlsAudioNextToVideo() throws IOException {
+        files.put("/audio/master.m3u8", lines("#EXTM3U",
+                "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",NAME=\"English\",DEFAULT=NO,URI=\"en.m3u8\"",
+                "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",NAME=\"Main\",DEFAULT=YES,URI=\"main.m3u8\"",
+                "#EXT-X-STREAM-INF:BANDWIDTH=1000,AUDIO=\"aac\"",
+                "video.m3u8"));
+        files.put("/audio/video.m3u8", lines("#EXTM3U", "#EXT-X-MAP:URI=\"v.mp4\"", "v1.m4s"));
+        files.put("/audio/main.m3u8", lines("#EXTM3U", "#EXT-X-MAP:URI=\"a.mp4\"", "a1.m4a", "a2.m4a"));
+        files.put("/audio/v.mp4", "[v]");
+        files.put("/audio/v1.m4s", "[v1]");
+        files.put("/audio/a.mp4", "[a]");
+        files.put("/audio/a1.m4a", "[a1]");
+        files.put("/audio/a2.m4a", "[a2]");
+
+        StreamDownload stream = load("/audio/master.m3u8");
+        assertEquals("1 MP4 segments and 2 audio segments", stream.describe());
+        assertEquals("[v][v1]", download(stream, new File(folder.getRoot(), "01 - Intro.mp4")));
+        File audio = new File(folder.getRoot(), "01 - Intro.m4a");
+        assertEquals("[a][a1][a2]", new String(Files.readAllBytes(audio.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsEncryptedHls() throws IOException {
+        files.put("/key/index.m3u8", lines("#EXTM3U", "#EXT-X-KEY:METHOD=AES-128,URI=\"key.bin\"", "1.ts"));
+        load("/key/index.m3u8");
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsPlaylistWithoutSegments() throws IOException {
+        files.put("/empty/index.m3u8", lines("#EXTM3U", "#EXT-X-ENDLIST"));
+        load("/empty/index.m3u8");
+    }
+
+    @Test
+    public void countsDashTemplateSegmentsFromDuration() throws IOException {
+        files.put("/dash/manifest.mpd", lines("<?xml version=\"1.0\"?>",
+                "<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" mediaPresentationDuration=\"PT7.5S\">",
+                "  <Period>",
+                "    <AdaptationSet contentType=\"video\" mimeType=\"video/mp4\">",
+                "      <SegmentTemplate initialization=\"$RepresentationID$/init.mp4\"",
+                "          media=\"$RepresentationID$/$Number%03d$.m4s\" startNumber=\"0\" timescale=\"1000\"",
+                "          duration=\"2000\"/>",
+                "      <Representation id=\"high\" bandwidth=\"500000\"/>",
+                "      <Representation id=\"low\" bandwidth=\"100000\"/>",
+                "    </AdaptationSet>",
+                "  </Period>",
+                "</MPD>"));
+        files.put("/dash/high/init.mp4", "[init]");
+        for (int i = 0; i < 4; i++) {
+            files.put("/dash/high/00" + i + ".m4s", "[" + i + "]");
+        }
+
+        StreamDownload stream = load("/dash/manifest.mpd");
+        assertEquals("4 MP4 segments", stream.describe());
+        assertEquals("[init][0][1][2][3]", download(stream, new File(folder.getRoot(), "01 - Intro.mp4")));
+    }
+
+    @Test
+    public void repeatsDashTimelineUntilEndOfPeriod() throws IOException {
+        files.put("/timeline/manifest.mpd", lines("<?xml version=\"1.0\"?>",
+                "<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\">",
+                "  <Period duration=\"P0Y0M0DT0H0M6S\">",
+                "    <AdaptationSet mimeType=\"video/mp4\">",
+                "      <Representation id=\"v\" bandwidth=\"1\">",
+                "        <SegmentTemplate media=\"v$Time$.m4s\" timescale=\"10\">",
+                "          <SegmentTimeline><S t=\"0\" d=\"20\" r=\"-1\"/></SegmentTimeline>",
+                "        </SegmentTemplate>",
+                "      </Representation>",
+                "    </AdaptationSet>",
+                "    <AdaptationSet mimeType=\"audio/mp4\">",
+                "      <Representation id=\"a\" bandwidth=\"1\"><BaseURL>audio.m4a</BaseURL></Representation>",
+                "    </AdaptationSet>",
+                "  </Period>",
+                "</MPD>"));
+        files.put("/timeline/v0.m4s", "[0]");
+        files.put("/timeline/v20.m4s", "[20]");
+        files.put("/timeline/v40.m4s", "[40]");
+        files.put("/timeline/audio.m4a", "[audio]");
+
+        StreamDownload stream = load("/timeline/manifest.mpd");
+        assertEquals("3 MP4 segments and 1 audio segments", stream.describe());
+        assertEquals("[0][20][40]", download(stream, new File(folder.getRoot(), "01 - Intro.mp4")));
+        File audio = new File(folder.getRoot(), "01 - Intro.m4a");
+        assertEquals("[audio]", new String(Files.readAllBytes(audio.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void followsDashSegmentListRanges() throws IOException {
+        files.put("/list/manifest.mpd", lines("<?xml version=\"1.0\"?>",
+                "<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\">",
+                "  <Period>",
+                "    <AdaptationSet contentType=\"video\">",
+                "      <Representation id=\"v\" bandwidth=\"1\" mimeType=\"video/mp4\">",
+                "        <BaseURL>" + remote("/list/all.mp4") + "</BaseURL>",
+                "        <SegmentList>",
+                "          <Initialization range=\"0-3\"/>",
+                "          <SegmentURL mediaRange=\"4-7\"/>",
+                "          <SegmentURL mediaRange=\"8-11\"/>",
+                "        </SegmentList>",
+                "      </Representation>",
+                "    </AdaptationSet>",
+                "  </Period>",
+                "</MPD>"));
+        files.put("/list/all.mp4", "INITSEG1SEG2");
+
+        StreamDownload stream = load("/list/manifest.mpd");
+        assertEquals("2 MP4 segments", stream.describe());
+        assertEquals("INITSEG1SEG2", download(stream, new File(folder.getRoot(), "01 - Intro.mp4")));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsDashWithoutVideo() throws IOException {
+        files.put("/novideo/manifest.mpd", lines("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\"><Period>",
+                "<AdaptationSet mimeType=\"audio/mp4\"><Representation id=\"a\" bandwidth=\"1\"/></AdaptationSet>",
+                "</Period></MPD>"));
+        load("/novideo/manifest.mpd");
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsDashTemplateWithoutDuration() throws IOException {
+        files.put("/nodur/manifest.mpd", lines("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\"><Period>",
+                "<AdaptationSet mimeType=\"video/mp4\"><SegmentTemplate media=\"$Number$.m4s\" duration=\"2\"/>",
+                "<Representation id=\"v\" bandwidth=\"1\"/></AdaptationSet>",
+                "</Period></MPD>"));
+        load("/nodur/manifest.mpd");
+    }
+}
@@ -0,0 +1,117 @@
+package com.fenix.DTBot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TutorialSchedulerTest {
+
+    private static QueueEntry entry(String annotations, int order) {
+        return QueueEntry.parse("http://example.com/tutorial/" + order + " " + annotations, order);
+    }
+
+    private static QueueEntry entry(int order, int lessons, long bytes) {
+        QueueEntry entry = entry("", order);
+        entry.setLessonCount(lessons);
+        entry.setTotalBytes(bytes);
+        return entry;
+    }
+
+    private static List<QueueEntry> drain(TutorialScheduler scheduler) {
+        List<QueueEntry> order = new ArrayList<>();
+        for (QueueEntry entry = scheduler.next(); entry != null; entry = scheduler.next()) {
+            order.add(entry);
+        }
+        return order;
+    }
+
+    @Test
+    public void keepsQueueOrderWithoutAnnotations() {
+        List<QueueEntry> entries = Arrays.asList(entry("", 0), entry("", 1), entry("", 2));
+        TutorialScheduler scheduler = new TutorialScheduler(entries, true);
+        assertEquals(3, scheduler.size());
+        assertEquals(entries, drain(scheduler));
+        assertNull(scheduler.next());
+    }
+
+    @Test
+    public void ordersByPriorityThenDeadline() {
+        QueueEntry plain = entry("", 0);
+        QueueEntry late = entry("deadline=2015-09-01", 1);
+        QueueEntry early = entry("deadline=2015-08-01", 2);
+        QueueEntry urgent = entry("priority=1", 3);
+        QueueEntry low = entry("priority=-1 deadline=2015-01-01", 4);
+
+        TutorialScheduler scheduler = new TutorialScheduler(Arrays.asList(plain, late, early, urgent, low), false);
+        assertEquals(Arrays.asList(urgent, early, late, plain, low), drain(scheduler));
+    }
+
+    @Test
+    public void ignoresSizeUnlessShortestJobFirst() {
+        List<QueueEntry> entries = Arrays.asList(entry(0, 10, 3000), entry(1, 2, 1000));
+        assertEquals(entries, drain(new TutorialScheduler(entries, false)));
+    }
+
+    @Test
+    public void ordersBySizeTiers() {
+        QueueEntry unknown = entry(0, -1, -1);
+        QueueEntry manyLessons = entry(1, 20, -1);
+        QueueEntry bigBytes = entry(2, 1, 5000);
+        QueueEntry fewLessons = entry(3, 2, -1);
+        QueueEntry smallBytes = entry(4, 40, 1000);
+
+        List<QueueEntry> expected = Arrays.asList(smallBytes, bigBytes, fewLessons, manyLessons, unknown);
+        List<QueueEntry> entries = new ArrayList<>(expected);
+        // the result must not depend on the order of the queue file
+        for (int i = 0; i < 10; i++) {
+            Collections.shuffle(entries);
+            assertEquals(expected, drain(new TutorialScheduler(entries, true)));
+        }
+    }
+
+    @Test
+    public void takesMetadataGatheredLaterIntoAccount() {
+        QueueEntry first = entry("", 0);
+        QueueEntry second = entry("", 1);
+        TutorialScheduler scheduler = new TutorialScheduler(Arrays.asList(first, second), true);
+        second.setTotalBytes(10);
+        assertSame(second, scheduler.next());
+        assertSame(first, scheduler.next());
+    }
+
+    @Test
+    public void handsOutDeferredTutorialsLast() {
+        QueueEntry a = entry("", 0);
+        QueueEntry b = entry("", 1);
+        QueueEntry c = entry("", 2);
+        TutorialScheduler scheduler = new TutorialScheduler(Arrays.asList(a, b, c), false);
+
+        assertSame(a, scheduler.next());
+        scheduler.defer(a);
+        assertSame(b, scheduler.next());
+        scheduler.defer(b);
+        assertSame(c, scheduler.next());
+        assertSame(a, scheduler.next());
+        assertSame(b, scheduler.next());
+        assertNull(scheduler.next());
+    }
+
+    @Test
+    public void addPutsTutorialBackAtItsPosition() {
+        QueueEntry a = entry("", 0);
+        QueueEntry b = entry("", 1);
+        TutorialScheduler scheduler = new TutorialScheduler(Arrays.asList(a, b), false);
+
+        assertSame(a, scheduler.next());
+        scheduler.add(a);
+        assertSame(a, scheduler.next());
+        assertSame(b, scheduler.next());
+    }
+}